@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestListDiff extends AndroidTestCase {
+
+    /**
+     * Records the updates as strings, so a test can compare them in one go.
+     */
+    private static class RecordingCallback implements ListDiff.Callback {
+        final List<String> updates = new ArrayList<String>();
+
+        @Override
+        public void onInserted(int position, int count) {
+            updates.add("insert " + position + "+" + count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            updates.add("remove " + position + "+" + count);
+        }
+
+        @Override
+        public void onChanged(int position, int count) {
+            updates.add("change " + position + "+" + count);
+        }
+    }
+
+    private static List<String> dispatch(ListDiff diff) {
+        RecordingCallback callback = new RecordingCallback();
+        diff.dispatchUpdatesTo(callback);
+        return callback.updates;
+    }
+
+    public void testUnchangedListHasNoUpdates() {
+        ListDiff diff = ListDiff.calculate(new long[]{1, 2, 3}, new int[]{7, 8, 9},
+                new long[]{1, 2, 3}, new int[]{7, 8, 9});
+        assertTrue("Error: An unchanged list should not be updated", dispatch(diff).isEmpty());
+        assertEquals(2, diff.getNewPosition(2));
+    }
+
+    public void testChangedContentIsReportedInRuns() {
+        ListDiff diff = ListDiff.calculate(new long[]{1, 2, 3, 4}, new int[]{7, 8, 9, 10},
+                new long[]{1, 2, 3, 4}, new int[]{7, 0, 0, 10});
+        assertEquals("[change 1+2]", dispatch(diff).toString());
+    }
+
+    public void testNewDayAtTheEndIsInserted() {
+        // A new day at the end of the forecast, and a change to the one before it
+        ListDiff diff = ListDiff.calculate(new long[]{1, 2, 3}, new int[]{7, 8, 9},
+                new long[]{1, 2, 3, 4, 5}, new int[]{7, 8, 0, 10, 11});
+        assertEquals("[change 2+1, insert 3+2]", dispatch(diff).toString());
+    }
+
+    public void testRemovalsShiftLaterPositions() {
+        ListDiff diff = ListDiff.calculate(new long[]{1, 2, 3, 4, 5}, new int[]{7, 8, 9, 10, 11},
+                new long[]{1, 4, 5, 6}, new int[]{7, 10, 0, 12});
+        assertEquals("[remove 1+2, change 2+1, insert 3+1]", dispatch(diff).toString());
+        assertEquals(ListDiff.NO_POSITION, diff.getNewPosition(1));
+        assertEquals(ListDiff.NO_POSITION, diff.getNewPosition(2));
+        assertEquals(1, diff.getNewPosition(3));
+        assertEquals(2, diff.getNewPosition(4));
+    }
+
+    public void testUnorderedKeysAreNotDiffed() {
+        assertNull("Error: Keys out of order can't be diffed in one pass",
+                ListDiff.calculate(new long[]{2, 1}, new int[]{0, 0},
+                        new long[]{1, 2}, new int[]{0, 0}));
+    }
+}
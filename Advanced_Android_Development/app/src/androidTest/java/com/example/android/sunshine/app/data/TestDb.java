@@ -55,6 +55,7 @@ public class TestDb extends AndroidTestCase {
         final HashSet<String> tableNameHashSet = new HashSet<String>();
         tableNameHashSet.add(WeatherContract.LocationEntry.TABLE_NAME);
         tableNameHashSet.add(WeatherContract.WeatherEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.HourlyEntry.TABLE_NAME);
 
         mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
         SQLiteDatabase db = new WeatherDbHelper(
@@ -177,6 +178,35 @@ public class TestDb extends AndroidTestCase {
     }
 
 
+    /*
+        Migrating a version 2 database should keep its rows and add the location/date index.
+     */
+    public void testMigrateFromVersion2() {
+        SQLiteDatabase db = SQLiteDatabase.create(null);
+        WeatherDbHelper.createVersion2Tables(db);
+
+        ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+        long locationRowId = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                locationValues);
+        assertTrue(locationRowId != -1);
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        assertTrue(db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, weatherValues) != -1);
+
+        WeatherDbHelper.migrate(db, WeatherDbHelper.OLDEST_MIGRATABLE_VERSION, 3);
+
+        Cursor c = db.rawQuery("SELECT name FROM sqlite_master WHERE type='index' AND name=?",
+                new String[]{WeatherDbHelper.WEATHER_LOCATION_DATE_INDEX});
+        assertTrue("Error: The location/date index was not created by the migration",
+                c.moveToFirst());
+        c.close();
+
+        Cursor weatherCursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                null, null, null, null, null, null);
+        TestUtilities.validateCursor("Error: Weather rows were lost by the migration",
+                weatherCursor, weatherValues);
+        db.close();
+    }
+
     /*
         Students: This is a helper method for the testWeatherTable quiz. You can move your
         code from testLocationTable to here so that you can call this code from both
@@ -24,12 +24,18 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
 import android.test.AndroidTestCase;
 import android.util.Log;
 
+import com.example.android.sunshine.app.data.WeatherContract.HourlyEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
     that at least the basic functionality has been implemented correctly.
@@ -56,6 +62,11 @@ public class TestProvider extends AndroidTestCase {
                 null,
                 null
         );
+        mContext.getContentResolver().delete(
+                HourlyEntry.CONTENT_URI,
+                null,
+                null
+        );
         mContext.getContentResolver().delete(
                 LocationEntry.CONTENT_URI,
                 null,
@@ -512,4 +523,291 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    // Writing the same forecast again should leave the stored rows alone, and a changed day should
+    // be updated in place rather than replaced by a new row.
+    public void testBulkInsertKeepsExistingRows() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+        long[] rowIds = queryWeatherRowIds();
+
+        int insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, insertCount);
+        assertTrue("Error: Unchanged rows were replaced",
+                Arrays.equals(rowIds, queryWeatherRowIds()));
+
+        ContentValues[] changedValues = createBulkInsertWeatherValues(locationRowId);
+        changedValues[3].put(WeatherEntry.COLUMN_SHORT_DESC, "Meteors");
+        insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                changedValues);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, insertCount);
+        assertTrue("Error: Changed row was not updated in place",
+                Arrays.equals(rowIds, queryWeatherRowIds()));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        cursor.moveToFirst();
+        for ( int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext() ) {
+            TestUtilities.validateCurrentRecord(
+                    "testBulkInsertKeepsExistingRows.  Error validating WeatherEntry " + i,
+                    cursor, changedValues[i]);
+        }
+        cursor.close();
+    }
+
+    // Storing a ForecastBatch should add its location and days, and storing it again should leave
+    // the rows alone.
+    public void testStoreForecasts() {
+        ForecastBatch forecast = new ForecastBatch();
+        forecast.setLocation(TestUtilities.TEST_LOCATION, "North Pole", 64.7488, -147.353);
+        long millisecondsInADay = 1000*60*60*24;
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++) {
+            forecast.add(TestUtilities.TEST_DATE + i * millisecondsInADay, 321, "Asteroids",
+                    75 + i, 65 - i, 1.2, 1.3, 5.5, 1.1);
+        }
+        ArrayList<ForecastBatch> forecasts = new ArrayList<ForecastBatch>();
+        forecasts.add(forecast);
+        Bundle extras = new Bundle();
+        extras.putParcelableArrayList(WeatherContract.EXTRA_FORECASTS, forecasts);
+
+        Bundle result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_STORE_FORECASTS, null, extras);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT,
+                result.getInt(WeatherContract.EXTRA_ROWS_STORED));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                null,
+                null,
+                null,
+                null
+        );
+        assertEquals("Error: Stored forecast not found by location",
+                BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+        long[] rowIds = queryWeatherRowIds();
+
+        result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_STORE_FORECASTS, null, extras);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT,
+                result.getInt(WeatherContract.EXTRA_ROWS_STORED));
+        assertTrue("Error: Storing the same forecast again replaced its rows",
+                Arrays.equals(rowIds, queryWeatherRowIds()));
+    }
+
+    // Days that are over should move from the weather table into the history, where the history
+    // URI still finds them, until their month is older than the history kept.
+    public void testStoreForecastsKeepsHistory() {
+        ForecastBatch forecast = new ForecastBatch();
+        forecast.setLocation(TestUtilities.TEST_LOCATION, "North Pole", 64.7488, -147.353);
+        long millisecondsInADay = 1000*60*60*24;
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++) {
+            forecast.add(TestUtilities.TEST_DATE + i * millisecondsInADay, 321, "Asteroids",
+                    75 + i, 65 - i, 1.2, 1.3, 5.5, 1.1);
+        }
+        ArrayList<ForecastBatch> forecasts = new ArrayList<ForecastBatch>();
+        forecasts.add(forecast);
+        Bundle extras = new Bundle();
+        extras.putParcelableArrayList(WeatherContract.EXTRA_FORECASTS, forecasts);
+        int overDays = BULK_INSERT_RECORDS_TO_INSERT / 2;
+        extras.putLong(WeatherContract.EXTRA_DELETE_BEFORE, WeatherContract.normalizeDate(
+                TestUtilities.TEST_DATE + overDays * millisecondsInADay));
+        mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_STORE_FORECASTS, null, extras);
+
+        assertEquals("Error: Days that are over were left in the weather table",
+                BULK_INSERT_RECORDS_TO_INSERT - overDays, queryWeatherRowIds().length);
+        Uri historyUri = WeatherEntry.buildWeatherHistory(TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE,
+                TestUtilities.TEST_DATE + BULK_INSERT_RECORDS_TO_INSERT * millisecondsInADay);
+        Cursor cursor = mContext.getContentResolver().query(historyUri, null, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: History query didn't find both past and coming days",
+                BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+
+        // Half a year later, with only a month of history kept
+        extras.putLong(WeatherContract.EXTRA_DELETE_BEFORE, WeatherContract.normalizeDate(
+                TestUtilities.TEST_DATE + 180 * millisecondsInADay));
+        extras.putInt(WeatherContract.EXTRA_HISTORY_MONTHS, 1);
+        forecasts.clear();
+        mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_STORE_FORECASTS, null, extras);
+        cursor = mContext.getContentResolver().query(historyUri, null, null, null, null);
+        assertEquals("Error: History older than kept was not dropped", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    // Archiving days months apart should only create partitions for the months that have any.
+    public void testArchiveSkipsEmptyMonths() {
+        long millisecondsInADay = 1000*60*60*24;
+        long strayDate = TestUtilities.TEST_DATE - 300 * millisecondsInADay;
+        ForecastBatch forecast = new ForecastBatch();
+        forecast.setLocation(TestUtilities.TEST_LOCATION, "North Pole", 64.7488, -147.353);
+        forecast.add(strayDate, 321, "Asteroids", 75, 65, 1.2, 1.3, 5.5, 1.1);
+        forecast.add(TestUtilities.TEST_DATE, 321, "Asteroids", 75, 65, 1.2, 1.3, 5.5, 1.1);
+        ArrayList<ForecastBatch> forecasts = new ArrayList<ForecastBatch>();
+        forecasts.add(forecast);
+        Bundle extras = new Bundle();
+        extras.putParcelableArrayList(WeatherContract.EXTRA_FORECASTS, forecasts);
+        extras.putLong(WeatherContract.EXTRA_DELETE_BEFORE, WeatherContract.normalizeDate(
+                TestUtilities.TEST_DATE + millisecondsInADay));
+        extras.putInt(WeatherContract.EXTRA_HISTORY_MONTHS, 24);
+        mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_STORE_FORECASTS, null, extras);
+
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getReadableDatabase();
+        List<Integer> partitions = WeatherHistory.getPartitions(db);
+        db.close();
+        assertEquals("Error: Months without days got a partition",
+                Arrays.asList(WeatherHistory.getMonth(strayDate),
+                        WeatherHistory.getMonth(TestUtilities.TEST_DATE)),
+                partitions);
+    }
+
+    // Hourly forecasts should be found by location and time range, storing the same one again
+    // should change nothing, and storing a newer one should drop the steps it no longer covers.
+    public void testStoreHourlyForecasts() {
+        long start = TestUtilities.TEST_DATE / 1000;
+        long step = 3 * 60 * 60;
+        HourlyBatch hourly = new HourlyBatch();
+        hourly.setLocation(TestUtilities.TEST_LOCATION, "North Pole", 64.7488, -147.353);
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++) {
+            hourly.add(start + i * step, -20.5 + i, 600 + i, 80, 3.2, 45 * i);
+        }
+        ArrayList<HourlyBatch> hourlyForecasts = new ArrayList<HourlyBatch>();
+        hourlyForecasts.add(hourly);
+        Bundle extras = new Bundle();
+        extras.putParcelableArrayList(WeatherContract.EXTRA_HOURLY_FORECASTS, hourlyForecasts);
+
+        Bundle result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_STORE_FORECASTS, null, extras);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT,
+                result.getInt(WeatherContract.EXTRA_HOURS_STORED));
+
+        // The second and third steps
+        Cursor cursor = mContext.getContentResolver().query(
+                HourlyEntry.buildHourlyLocationWithRange(TestUtilities.TEST_LOCATION,
+                        (start + step) * 1000, (start + 3 * step) * 1000),
+                new String[]{HourlyEntry.COLUMN_TIME, HourlyEntry.COLUMN_TEMP,
+                        HourlyEntry.COLUMN_WEATHER, HourlyEntry.COLUMN_WIND},
+                null,
+                null,
+                HourlyEntry.COLUMN_TIME + " ASC"
+        );
+        assertEquals("Error: Hourly range query returned the wrong steps", 2, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals(start + step, cursor.getLong(0));
+        assertEquals(-19.5, HourlyEntry.getTemperature(cursor.getInt(1)), 1e-9);
+        assertEquals(601, HourlyEntry.getWeatherId(cursor.getInt(2)));
+        assertEquals(45f, HourlyEntry.getWindDirection(cursor.getInt(3)));
+        cursor.close();
+
+        // The same forecast again is still reported as stored, but nobody is told about it
+        Uri hourlyUri = HourlyEntry.buildHourlyLocation(TestUtilities.TEST_LOCATION);
+        TestUtilities.TestContentObserver hourlyObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(hourlyUri, true, hourlyObserver);
+        result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_STORE_FORECASTS, null, extras);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT,
+                result.getInt(WeatherContract.EXTRA_HOURS_STORED));
+        assertEquals("Error: An unchanged hourly forecast was notified",
+                0, hourlyObserver.countNotificationsWithin(WeatherChangeNotifier.DEBOUNCE_MS * 5));
+        mContext.getContentResolver().unregisterContentObserver(hourlyObserver);
+
+        // A newer forecast, starting a step later
+        HourlyBatch newer = new HourlyBatch();
+        newer.setLocation(TestUtilities.TEST_LOCATION, "North Pole", 64.7488, -147.353);
+        newer.add(start + step, 0, 800, 50, 1, 0);
+        newer.add(start + 2 * step, 0, 800, 50, 1, 0);
+        hourlyForecasts.clear();
+        hourlyForecasts.add(newer);
+        mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_STORE_FORECASTS, null, extras);
+        cursor = mContext.getContentResolver().query(
+                HourlyEntry.buildHourlyLocation(TestUtilities.TEST_LOCATION),
+                null, null, null, null);
+        assertEquals("Error: Steps the newer forecast doesn't cover were kept",
+                2, cursor.getCount());
+        cursor.close();
+    }
+
+    // Storing the forecasts of several locations in one call should tell the observers of each
+    // location about it once, however many days and steps changed.
+    public void testStoreForecastsForTwoLocations() {
+        String[] locations = {TestUtilities.TEST_LOCATION, "10001"};
+        long millisecondsInADay = 1000*60*60*24;
+        long step = 3 * 60 * 60;
+        ArrayList<ForecastBatch> forecasts = new ArrayList<ForecastBatch>();
+        ArrayList<HourlyBatch> hourlyForecasts = new ArrayList<HourlyBatch>();
+        for (String location : locations) {
+            ForecastBatch forecast = new ForecastBatch();
+            forecast.setLocation(location, "North Pole", 64.7488, -147.353);
+            HourlyBatch hourly = new HourlyBatch();
+            hourly.setLocation(location, "North Pole", 64.7488, -147.353);
+            for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++) {
+                forecast.add(TestUtilities.TEST_DATE + i * millisecondsInADay, 321, "Asteroids",
+                        75 + i, 65 - i, 1.2, 1.3, 5.5, 1.1);
+                hourly.add(TestUtilities.TEST_DATE / 1000 + i * step, -20.5 + i, 600 + i, 80,
+                        3.2, 45 * i);
+            }
+            forecasts.add(forecast);
+            hourlyForecasts.add(hourly);
+        }
+        Bundle extras = new Bundle();
+        extras.putParcelableArrayList(WeatherContract.EXTRA_FORECASTS, forecasts);
+        extras.putParcelableArrayList(WeatherContract.EXTRA_HOURLY_FORECASTS, hourlyForecasts);
+
+        Uri[] uris = {
+                WeatherEntry.buildWeatherLocation(locations[0]),
+                WeatherEntry.buildWeatherLocation(locations[1]),
+                HourlyEntry.buildHourlyLocation(locations[0]),
+                HourlyEntry.buildHourlyLocation(locations[1])
+        };
+        TestUtilities.TestContentObserver[] observers =
+                new TestUtilities.TestContentObserver[uris.length];
+        for (int i = 0; i < uris.length; i++) {
+            observers[i] = TestUtilities.getTestContentObserver();
+            mContext.getContentResolver().registerContentObserver(uris[i], true, observers[i]);
+        }
+
+        Bundle result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_STORE_FORECASTS, null, extras);
+        assertEquals(2 * BULK_INSERT_RECORDS_TO_INSERT,
+                result.getInt(WeatherContract.EXTRA_ROWS_STORED));
+        assertEquals(2 * BULK_INSERT_RECORDS_TO_INSERT,
+                result.getInt(WeatherContract.EXTRA_HOURS_STORED));
+
+        for (int i = 0; i < uris.length; i++) {
+            int notifications =
+                    observers[i].countNotificationsWithin(WeatherChangeNotifier.DEBOUNCE_MS * 5);
+            assertEquals("Error: " + uris[i] + " was not notified exactly once",
+                    1, notifications);
+            mContext.getContentResolver().unregisterContentObserver(observers[i]);
+        }
+    }
+
+    private long[] queryWeatherRowIds() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID},
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        long[] rowIds = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            rowIds[i] = cursor.getLong(0);
+        }
+        cursor.close();
+        return rowIds;
+    }
 }
@@ -23,6 +23,7 @@ import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.test.AndroidTestCase;
 
 import com.example.android.sunshine.app.utils.PollingCheck;
@@ -122,6 +123,7 @@ public class TestUtilities extends AndroidTestCase {
     static class TestContentObserver extends ContentObserver {
         final HandlerThread mHT;
         boolean mContentChanged;
+        volatile int mChangeCount;
 
         static TestContentObserver getTestContentObserver() {
             HandlerThread ht = new HandlerThread("ContentObserverThread");
@@ -143,6 +145,17 @@ public class TestUtilities extends AndroidTestCase {
         @Override
         public void onChange(boolean selfChange, Uri uri) {
             mContentChanged = true;
+            mChangeCount++;
+        }
+
+        /**
+         * Waits out the given time and counts the changes heard, for checking that a change was
+         * only announced once, or not at all.
+         */
+        public int countNotificationsWithin(long millis) {
+            SystemClock.sleep(millis);
+            mHT.quit();
+            return mChangeCount;
         }
 
         public void waitForNotificationOrFail() {
@@ -42,4 +42,18 @@ public class TestWeatherContract extends AndroidTestCase {
                 locationUri.toString(),
                 "content://com.example.android.sunshine.app/weather/%2FNorth%20Pole");
     }
+
+    // The packed hourly columns should give back what went in, to the precision they keep
+    public void testHourlyPacking() {
+        int temp = WeatherContract.HourlyEntry.toStoredTemperature(-12.34);
+        assertEquals(-12.3, WeatherContract.HourlyEntry.getTemperature(temp), 1e-9);
+
+        int weather = WeatherContract.HourlyEntry.packWeather(804, 87.6);
+        assertEquals(804, WeatherContract.HourlyEntry.getWeatherId(weather));
+        assertEquals(88, WeatherContract.HourlyEntry.getHumidity(weather));
+
+        int wind = WeatherContract.HourlyEntry.packWind(7.26, -90);
+        assertEquals(7.3f, WeatherContract.HourlyEntry.getWindSpeed(wind), 1e-6f);
+        assertEquals(270f, WeatherContract.HourlyEntry.getWindDirection(wind));
+    }
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import org.json.JSONException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Runs ForecastJsonParser against responses recorded from OpenWeatherMap's forecast/daily
+    endpoint (trimmed to a few days to keep them readable).
+ */
+public class TestForecastJsonParser extends AndroidTestCase {
+
+    // Recorded for q=94043, units=metric, cnt=3
+    static final String RESPONSE_MOUNTAIN_VIEW = "{\"city\":{\"id\":5375480,\"name\":\"Mountain View\"," +
+            "\"coord\":{\"lon\":-122.083847,\"lat\":37.386051},\"country\":\"US\",\"population\":0}," +
+            "\"cod\":\"200\",\"message\":0.0117,\"cnt\":3,\"list\":[" +
+            "{\"dt\":1445889600,\"temp\":{\"day\":21.23,\"min\":10.05,\"max\":21.23,\"night\":10.05," +
+            "\"eve\":17.87,\"morn\":21.23},\"pressure\":1005.64,\"humidity\":72," +
+            "\"weather\":[{\"id\":800,\"main\":\"Clear\",\"description\":\"sky is clear\",\"icon\":\"01d\"}]," +
+            "\"speed\":1.26,\"deg\":278,\"clouds\":0}," +
+            "{\"dt\":1445976000,\"temp\":{\"day\":20.31,\"min\":9.28,\"max\":22.55,\"night\":11.17," +
+            "\"eve\":18.54,\"morn\":9.28},\"pressure\":1005.41,\"humidity\":70.5," +
+            "\"weather\":[{\"id\":501,\"main\":\"Rain\",\"description\":\"moderate rain\",\"icon\":\"10d\"}," +
+            "{\"id\":701,\"main\":\"Mist\",\"description\":\"mist\",\"icon\":\"50d\"}]," +
+            "\"speed\":1.51,\"deg\":288,\"clouds\":0,\"rain\":3.2}," +
+            "{\"dt\":1446062400,\"temp\":{\"day\":19.92,\"min\":11.4,\"max\":19.92,\"night\":11.4," +
+            "\"eve\":16.05,\"morn\":12.5},\"pressure\":1000.32,\"humidity\":0," +
+            "\"weather\":[{\"id\":803,\"main\":\"Clouds\",\"description\":\"broken clouds\",\"icon\":\"04d\"}]," +
+            "\"speed\":3.81,\"deg\":251,\"clouds\":68}]}";
+
+    // Same shape of response, but with the list of days ahead of the city and a numeric cod
+    static final String RESPONSE_LIST_BEFORE_CITY = "{\"cod\":200,\"cnt\":1,\"list\":[" +
+            "{\"dt\":1445889600,\"temp\":{\"day\":-3.5,\"min\":-8.25,\"max\":-1},\"pressure\":1021," +
+            "\"humidity\":88,\"weather\":[{\"id\":601,\"main\":\"Snow\",\"description\":\"snow\"," +
+            "\"icon\":\"13d\"}],\"speed\":6.2,\"deg\":12}]," +
+            "\"city\":{\"name\":\"North Pole\",\"coord\":{\"lat\":64.7488,\"lon\":-147.353}}}";
+
+    // Recorded for q=thisisnotaplace
+    static final String RESPONSE_NOT_FOUND =
+            "{\"cod\":\"404\",\"message\":\"Error: Not found city\"}";
+
+    static final String RESPONSE_SERVER_ERROR =
+            "{\"cod\":\"500\",\"message\":\"Internal error: 500001\"}";
+
+    static final String RESPONSE_MISSING_WIND = "{\"city\":{\"name\":\"Mountain View\"," +
+            "\"coord\":{\"lon\":-122.08,\"lat\":37.38}},\"cod\":\"200\",\"list\":[" +
+            "{\"temp\":{\"min\":10.05,\"max\":21.23},\"pressure\":1005.64,\"humidity\":72," +
+            "\"weather\":[{\"id\":800,\"main\":\"Clear\"}]}]}";
+
+    static final String RESPONSE_TRUNCATED = RESPONSE_MOUNTAIN_VIEW.substring(0, 300);
+
+    static class RecordingHandler implements ForecastJsonParser.Handler {
+        String cityName;
+        double lat;
+        double lon;
+        final List<Object[]> days = new ArrayList<Object[]>();
+
+        @Override
+        public void onCity(String cityName, double lat, double lon) {
+            this.cityName = cityName;
+            this.lat = lat;
+            this.lon = lon;
+        }
+
+        @Override
+        public void onDay(int day, double pressure, int humidity, double windSpeed,
+                          double windDirection, double high, double low, String description,
+                          int weatherId) {
+            days.add(new Object[]{day, pressure, humidity, windSpeed, windDirection, high, low,
+                    description, weatherId});
+        }
+    }
+
+    static int parse(String response, RecordingHandler handler)
+            throws IOException, JSONException {
+        return ForecastJsonParser.parse(
+                new ByteArrayInputStream(response.getBytes("UTF-8")), handler);
+    }
+
+    public void testParseDailyForecast() throws Throwable {
+        RecordingHandler handler = new RecordingHandler();
+        assertEquals(HttpURLConnection.HTTP_OK, parse(RESPONSE_MOUNTAIN_VIEW, handler));
+
+        assertEquals("Mountain View", handler.cityName);
+        assertEquals(37.386051, handler.lat, 1e-9);
+        assertEquals(-122.083847, handler.lon, 1e-9);
+        assertEquals(3, handler.days.size());
+
+        Object[] first = handler.days.get(0);
+        assertEquals(0, first[0]);
+        assertEquals(1005.64, (Double) first[1], 1e-9);
+        assertEquals(72, first[2]);
+        assertEquals(1.26, (Double) first[3], 1e-9);
+        assertEquals(278.0, (Double) first[4], 1e-9);
+        assertEquals(21.23, (Double) first[5], 1e-9);
+        assertEquals(10.05, (Double) first[6], 1e-9);
+        assertEquals("Clear", first[7]);
+        assertEquals(800, first[8]);
+
+        // Only the first element of "weather" counts, and fractional humidity is truncated
+        Object[] second = handler.days.get(1);
+        assertEquals(1, second[0]);
+        assertEquals(70, second[2]);
+        assertEquals("Rain", second[7]);
+        assertEquals(501, second[8]);
+
+        assertEquals(2, handler.days.get(2)[0]);
+    }
+
+    public void testParseListBeforeCity() throws Throwable {
+        RecordingHandler handler = new RecordingHandler();
+        assertEquals(HttpURLConnection.HTTP_OK, parse(RESPONSE_LIST_BEFORE_CITY, handler));
+
+        assertEquals("North Pole", handler.cityName);
+        assertEquals(1, handler.days.size());
+        assertEquals(-1.0, (Double) handler.days.get(0)[5], 1e-9);
+        assertEquals(-8.25, (Double) handler.days.get(0)[6], 1e-9);
+        assertEquals(601, handler.days.get(0)[8]);
+    }
+
+    public void testParseErrorCodes() throws Throwable {
+        RecordingHandler handler = new RecordingHandler();
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, parse(RESPONSE_NOT_FOUND, handler));
+        assertNull(handler.cityName);
+        assertTrue(handler.days.isEmpty());
+
+        assertEquals(HttpURLConnection.HTTP_INTERNAL_ERROR,
+                parse(RESPONSE_SERVER_ERROR, new RecordingHandler()));
+    }
+
+    public void testParseInvalidResponses() throws Throwable {
+        try {
+            parse(RESPONSE_MISSING_WIND, new RecordingHandler());
+            fail("Error: a day without wind should not parse");
+        } catch (JSONException expected) {
+        }
+
+        try {
+            parse("{\"cod\":\"200\",\"cnt\":0}", new RecordingHandler());
+            fail("Error: a response without city and list should not parse");
+        } catch (JSONException expected) {
+        }
+
+        try {
+            parse(RESPONSE_TRUNCATED, new RecordingHandler());
+            fail("Error: a truncated response should not parse");
+        } catch (IOException | JSONException expected) {
+        }
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The selected art pack's images, downloaded once and kept on disk at the sizes they are shown.
+ *
+ * There are only a handful of conditions, so rather than going to the network whenever a view,
+ * widget or notification wants art, {@link #update} stores every condition of the pack at each
+ * size it is drawn at.  After that {@link #getBitmap} reads the art straight off disk, which
+ * works offline and is quick enough for the sync thread.  The downloads themselves are only ever
+ * run on a thread of their own, by {@link #updateInBackground}.  Each pack is kept under a
+ * directory named after a hash of its URL, and only the selected pack is kept, so the cache
+ * never holds more than one image per condition and size.
+ */
+public final class ArtCache {
+    private static final String LOG_TAG = ArtCache.class.getSimpleName();
+
+    /** List rows other than today, and the detail widget. */
+    public static final int SIZE_LIST = 0;
+    /** Today's row and the detail pane. */
+    public static final int SIZE_TODAY = 1;
+    /** The large icon of the weather notification. */
+    public static final int SIZE_NOTIFICATION = 2;
+    private static final int SIZE_COUNT = 3;
+
+    private static final String ART_DIRECTORY = "art";
+    // How long a single image gets to download before the update moves on
+    private static final long DOWNLOAD_TIMEOUT_MS = 30 * 1000;
+    // After a download fails, the same pack is not tried again for this long
+    private static final long RETRY_DELAY_MS = 6 * 60 * 60 * 1000;
+
+    // Which images of the selected pack are stored, found by listing its directory once
+    private static volatile Index sIndex;
+    // Updates are queued here, so only one ever touches the directories at a time
+    private static final ExecutorService sUpdateExecutor = Executors.newSingleThreadExecutor();
+    // The pack whose download last failed, and when it may be tried again
+    private static String sFailedArtPack;
+    private static long sRetryTime;
+
+    private static final class Index {
+        final String artPack;
+        final File directory;
+        final boolean[] stored = new boolean[WeatherConditions.COUNT * SIZE_COUNT];
+
+        Index(String artPack, File directory) {
+            this.artPack = artPack;
+            this.directory = directory;
+            String[] names = directory.list();
+            if (names == null) {
+                return;
+            }
+            Set<String> files = new HashSet<String>(Arrays.asList(names));
+            for (int condition = 0; condition < WeatherConditions.COUNT; condition++) {
+                for (int size = 0; size < SIZE_COUNT; size++) {
+                    stored[condition * SIZE_COUNT + size] =
+                            files.contains(getFileName(condition, size));
+                }
+            }
+        }
+
+        File getFile(int condition, int size) {
+            return stored[condition * SIZE_COUNT + size]
+                    ? new File(directory, getFileName(condition, size)) : null;
+        }
+    }
+
+    private ArtCache() {
+    }
+
+    /**
+     * Where to load the art for a weather condition from: the stored image if there is one,
+     * else the art pack's URL.
+     *
+     * @param size one of the SIZE constants
+     * @return the URL, or null to use the bundled art
+     */
+    public static String getArtUrl(Context context, int weatherId, int size) {
+        DisplayConfig config = DisplayConfig.get(context);
+        int condition = WeatherConditions.getCondition(weatherId);
+        if (config.isUsingLocalGraphics() || condition == WeatherConditions.UNKNOWN) {
+            return null;
+        }
+        File file = getIndex(context, config).getFile(condition, size);
+        return file != null ? Uri.fromFile(file).toString() : config.getArtUrl(condition);
+    }
+
+    /**
+     * @return true if the URL from {@link #getArtUrl} is for a stored image
+     */
+    public static boolean isStored(String artUrl) {
+        return artUrl != null && artUrl.startsWith("file:");
+    }
+
+    /**
+     * Reads the stored art for a weather condition.  This never goes to the network.
+     *
+     * @param size one of the SIZE constants
+     * @return the art, or null if the bundled art is in use or the image is not stored yet
+     */
+    public static Bitmap getBitmap(Context context, int weatherId, int size) {
+        DisplayConfig config = DisplayConfig.get(context);
+        int condition = WeatherConditions.getCondition(weatherId);
+        if (config.isUsingLocalGraphics() || condition == WeatherConditions.UNKNOWN) {
+            return null;
+        }
+        File file = getIndex(context, config).getFile(condition, size);
+        return file != null ? BitmapFactory.decodeFile(file.getPath()) : null;
+    }
+
+    /**
+     * Runs {@link #update} on a background thread, so neither the caller nor the sync waits for
+     * any downloads.  Updates queue up behind each other.
+     *
+     * @param userRequested true if the user just selected the pack, in which case it is tried
+     * again even if its last download failed
+     */
+    public static void updateInBackground(Context context, final boolean userRequested) {
+        final Context appContext = context.getApplicationContext();
+        sUpdateExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                update(appContext, userRequested);
+            }
+        });
+    }
+
+    /**
+     * Deletes the images of every other art pack, then downloads whatever images of the selected
+     * pack are not stored yet.  Does nothing more once the pack is complete.  The first failed
+     * download stops the update, and the pack is not tried again for {@link #RETRY_DELAY_MS}
+     * unless the update was requested by the user.  This can take minutes, so it must only run
+     * on the update thread.
+     */
+    private static synchronized void update(Context context, boolean userRequested) {
+        if (userRequested) {
+            sFailedArtPack = null;
+        }
+        // The preference rather than the DisplayConfig, which may not have heard of a new pack
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        String artPack = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                sunshineArtPack);
+        boolean usingLocalGraphics = artPack.equals(sunshineArtPack);
+
+        File root = new File(context.getFilesDir(), ART_DIRECTORY);
+        String packDirectoryName = getDirectoryName(artPack);
+        File[] packDirectories = root.listFiles();
+        if (packDirectories != null) {
+            for (File directory : packDirectories) {
+                if (usingLocalGraphics || !directory.getName().equals(packDirectoryName)) {
+                    deleteDirectory(directory);
+                    // The index may be for the pack just deleted, if it was selected before
+                    sIndex = null;
+                }
+            }
+        }
+        if (usingLocalGraphics) {
+            return;
+        }
+
+        File directory = new File(root, packDirectoryName);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(LOG_TAG, "Cannot create " + directory);
+            return;
+        }
+        if (artPack.equals(sFailedArtPack) && SystemClock.elapsedRealtime() < sRetryTime) {
+            return;
+        }
+        Index index = new Index(artPack, directory);
+        int stored = 0;
+        boolean failed = false;
+        for (int condition = 0; condition < WeatherConditions.COUNT && !failed; condition++) {
+            String url = String.format(Locale.US, artPack,
+                    WeatherConditions.getArtName(condition));
+            for (int size = 0; size < SIZE_COUNT; size++) {
+                if (index.getFile(condition, size) != null) {
+                    continue;
+                }
+                try {
+                    if (download(context, url, size, new File(directory,
+                            getFileName(condition, size)))) {
+                        stored++;
+                    } else {
+                        // Most likely offline, in which case the rest would fail as well
+                        failed = true;
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failed = true;
+                    break;
+                }
+            }
+        }
+
+        if (failed) {
+            sFailedArtPack = artPack;
+            sRetryTime = SystemClock.elapsedRealtime() + RETRY_DELAY_MS;
+        } else {
+            sFailedArtPack = null;
+        }
+        if (stored > 0) {
+            sIndex = null;
+            // Lists pick the stored images up the next time their rows are built
+            context.getContentResolver().notifyChange(
+                    WeatherContract.WeatherEntry.CONTENT_URI, null);
+        }
+    }
+
+    private static Index getIndex(Context context, DisplayConfig config) {
+        Index index = sIndex;
+        if (index == null || !index.artPack.equals(config.getArtPack())) {
+            File directory = new File(new File(context.getFilesDir(), ART_DIRECTORY),
+                    getDirectoryName(config.getArtPack()));
+            index = new Index(config.getArtPack(), directory);
+            sIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Downloads the image scaled to fit the size, and writes it to the file.
+     *
+     * @return true if it was stored
+     */
+    private static boolean download(Context context, String url, int size, File file)
+            throws InterruptedException {
+        int[] pixels = getSizePixels(context, size);
+        Bitmap bitmap;
+        try {
+            bitmap = Glide.with(context)
+                    .load(url)
+                    .asBitmap()
+                    .fitCenter()
+                    .into(pixels[0], pixels[1])
+                    .get(DOWNLOAD_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            Log.e(LOG_TAG, "Error retrieving art from " + url, e);
+            return false;
+        }
+
+        // Written aside and renamed, so a half written image is never read
+        File tempFile = new File(file.getPath() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tempFile);
+            if (!bitmap.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+                return false;
+            }
+            out.close();
+            out = null;
+            return tempFile.renameTo(file);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error storing art in " + file, e);
+            return false;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Nothing more to do about it
+                }
+            }
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * @return the width and height, in pixels, art of the given size is drawn at
+     */
+    private static int[] getSizePixels(Context context, int size) {
+        switch (size) {
+            case SIZE_LIST: {
+                int side = context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+                return new int[]{side, side};
+            }
+            case SIZE_TODAY: {
+                int side = context.getResources().getDimensionPixelSize(R.dimen.today_icon);
+                return new int[]{side, side};
+            }
+            case SIZE_NOTIFICATION:
+                return new int[]{
+                        context.getResources().getDimensionPixelSize(
+                                android.R.dimen.notification_large_icon_width),
+                        context.getResources().getDimensionPixelSize(
+                                android.R.dimen.notification_large_icon_height)};
+            default:
+                throw new IllegalArgumentException("Unknown art size: " + size);
+        }
+    }
+
+    private static String getFileName(int condition, int size) {
+        return WeatherConditions.getArtName(condition) + "_" + size + ".png";
+    }
+
+    /**
+     * @return a name for the art pack's directory, from a hash of its URL
+     */
+    private static String getDirectoryName(String artPack) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(artPack.getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                name.append(String.format(Locale.US, "%02x", b & 0xff));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            // Both are required of every platform
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
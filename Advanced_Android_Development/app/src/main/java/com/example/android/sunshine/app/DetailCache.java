@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.util.LruCache;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Detail rows formatted ahead of time by {@link DetailPrefetcher}, keyed by the detail URI
+ * {@link DetailFragment} is opened with.
+ *
+ * Every row is dropped when the weather changes, and a row formatted with display preferences
+ * that have since changed is never handed out.
+ */
+final class DetailCache {
+
+    // A screenful of days on either side of the visible ones
+    private static final int MAX_ROWS = 32;
+
+    private static final LruCache<Uri, DetailRow> sRows = new LruCache<Uri, DetailRow>(MAX_ROWS);
+    // Bumped on every change, so a row read before a change is never cached after it
+    private static int sGeneration;
+    private static ContentObserver sObserver;
+
+    private DetailCache() {
+    }
+
+    /**
+     * @return the row for the detail URI, or null if there is no current one
+     */
+    static DetailRow get(Context context, Uri uri) {
+        DetailRow row = sRows.get(uri);
+        if (row != null && !row.isCurrent(context)) {
+            sRows.remove(uri);
+            return null;
+        }
+        return row;
+    }
+
+    /**
+     * @return the generation to hand to {@link #put} for a row about to be read
+     */
+    static synchronized int getGeneration(Context context) {
+        if (sObserver == null) {
+            listenForChanges(context.getApplicationContext());
+        }
+        return sGeneration;
+    }
+
+    /**
+     * Caches the row, unless the weather changed since the generation was taken.
+     */
+    static synchronized void put(Uri uri, DetailRow row, int generation) {
+        if (generation == sGeneration) {
+            sRows.put(uri, row);
+        }
+    }
+
+    private static void listenForChanges(Context context) {
+        // Notified on the provider's thread, which is fine as it only touches the cache
+        sObserver = new ContentObserver(null) {
+            @Override
+            public void onChange(boolean selfChange) {
+                synchronized (DetailCache.class) {
+                    sGeneration++;
+                    sRows.evictAll();
+                }
+            }
+        };
+        context.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true,
+                sObserver);
+    }
+}
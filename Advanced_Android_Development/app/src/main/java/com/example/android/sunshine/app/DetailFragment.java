@@ -38,6 +38,7 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
@@ -55,10 +56,14 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     private String mForecast;
     private Uri mUri;
     private boolean mTransitionAnimation;
+    // The day shown, if any
+    private DetailRow mRow;
+    // Whether the toolbar of the current view is set up and the transition started
+    private boolean mToolbarReady;
 
     private static final int DETAIL_LOADER = 0;
 
-    private static final String[] DETAIL_COLUMNS = {
+    static final String[] DETAIL_COLUMNS = {
             WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
             WeatherEntry.COLUMN_DATE,
             WeatherEntry.COLUMN_SHORT_DESC,
@@ -114,6 +119,7 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
         }
 
         View rootView = inflater.inflate(R.layout.fragment_detail_start, container, false);
+        mToolbarReady = false;
         mIconView = (ImageView) rootView.findViewById(R.id.detail_icon);
         mDateView = (TextView) rootView.findViewById(R.id.detail_date_textview);
         mDescriptionView = (TextView) rootView.findViewById(R.id.detail_forecast_textview);
@@ -153,6 +159,15 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
 
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
+        // Show the day straight away if it was prefetched; the loader still makes sure it is
+        // current, but the transition no longer waits for it
+        if (null != mUri) {
+            DetailRow row = DetailCache.get(getActivity(), mUri);
+            if (null != row) {
+                bindRow(row);
+                finishShowing();
+            }
+        }
         getLoaderManager().initLoader(DETAIL_LOADER, null, this);
         super.onActivityCreated(savedInstanceState);
     }
@@ -192,81 +207,87 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
         if (data != null && data.moveToFirst()) {
-            ViewParent vp = getView().getParent();
-            if ( vp instanceof CardView ) {
-                ((View)vp).setVisibility(View.VISIBLE);
-            }
+            bindRow(DetailRow.fromCursor(getActivity(), data));
+        }
+        finishShowing();
+    }
 
-            // Read weather condition ID from cursor
-            int weatherId = data.getInt(COL_WEATHER_CONDITION_ID);
-
-            if ( Utility.usingLocalGraphics(getActivity()) ) {
-                mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
-            } else {
-                // Use weather art image
-                Glide.with(this)
-                        .load(Utility.getArtUrlForWeatherCondition(getActivity(), weatherId))
-                        .error(Utility.getArtResourceForWeatherCondition(weatherId))
-                        .crossFade()
-                        .into(mIconView);
-            }
+    private void bindRow(DetailRow row) {
+        // The loader redelivers the day shown from the cache, usually unchanged
+        if (mRow != null && mRow.date == row.date && mRow.contentHash == row.contentHash) {
+            return;
+        }
+        mRow = row;
 
-            // Read date from cursor and update views for day of week and date
-            long date = data.getLong(COL_WEATHER_DATE);
-            String dateText = Utility.getFullFriendlyDayString(getActivity(),date);
-            mDateView.setText(dateText);
-
-            // Get description from weather condition ID
-            String description = Utility.getStringForWeatherCondition(getActivity(), weatherId);
-            mDescriptionView.setText(description);
-            mDescriptionView.setContentDescription(getString(R.string.a11y_forecast, description));
-
-            // For accessibility, add a content description to the icon field. Because the ImageView
-            // is independently focusable, it's better to have a description of the image. Using
-            // null is appropriate when the image is purely decorative or when the image already
-            // has text describing it in the same UI component.
-            mIconView.setContentDescription(getString(R.string.a11y_forecast_icon, description));
-
-            // Read high temperature from cursor and update view
-            boolean isMetric = Utility.isMetric(getActivity());
-
-            double high = data.getDouble(COL_WEATHER_MAX_TEMP);
-            String highString = Utility.formatTemperature(getActivity(), high);
-            mHighTempView.setText(highString);
-            mHighTempView.setContentDescription(getString(R.string.a11y_high_temp, highString));
-
-            // Read low temperature from cursor and update view
-            double low = data.getDouble(COL_WEATHER_MIN_TEMP);
-            String lowString = Utility.formatTemperature(getActivity(), low);
-            mLowTempView.setText(lowString);
-            mLowTempView.setContentDescription(getString(R.string.a11y_low_temp, lowString));
-
-            // Read humidity from cursor and update view
-            float humidity = data.getFloat(COL_WEATHER_HUMIDITY);
-            mHumidityView.setText(getActivity().getString(R.string.format_humidity, humidity));
-            mHumidityView.setContentDescription(getString(R.string.a11y_humidity, mHumidityView.getText()));
-            mHumidityLabelView.setContentDescription(mHumidityView.getContentDescription());
-
-            // Read wind speed and direction from cursor and update view
-            float windSpeedStr = data.getFloat(COL_WEATHER_WIND_SPEED);
-            float windDirStr = data.getFloat(COL_WEATHER_DEGREES);
-            mWindView.setText(Utility.getFormattedWind(getActivity(), windSpeedStr, windDirStr));
-            mWindView.setContentDescription(getString(R.string.a11y_wind, mWindView.getText()));
-            mWindLabelView.setContentDescription(mWindView.getContentDescription());
-
-            // Read pressure from cursor and update view
-            float pressure = data.getFloat(COL_WEATHER_PRESSURE);
-            mPressureView.setText(getString(R.string.format_pressure, pressure));
-            mPressureView.setContentDescription(getString(R.string.a11y_pressure, mPressureView.getText()));
-            mPressureLabelView.setContentDescription(mPressureView.getContentDescription());
-
-            // We still need this for the share intent
-            mForecast = String.format("%s - %s - %s/%s", dateText, description, high, low);
+        ViewParent vp = getView().getParent();
+        if ( vp instanceof CardView ) {
+            ((View)vp).setVisibility(View.VISIBLE);
+        }
 
+        if ( row.artUrl == null ) {
+            mIconView.setImageResource(row.artResource);
+        } else {
+            // Use weather art image.  The source is kept on disk, which is where
+            // DetailPrefetcher downloads it to.
+            Glide.with(this)
+                    .load(row.artUrl)
+                    .diskCacheStrategy(DiskCacheStrategy.ALL)
+                    .error(row.artResource)
+                    .crossFade()
+                    .into(mIconView);
         }
+
+        mDateView.setText(row.dateText);
+
+        mDescriptionView.setText(row.description);
+        mDescriptionView.setContentDescription(row.descriptionA11y);
+
+        // For accessibility, add a content description to the icon field. Because the ImageView
+        // is independently focusable, it's better to have a description of the image. Using
+        // null is appropriate when the image is purely decorative or when the image already
+        // has text describing it in the same UI component.
+        mIconView.setContentDescription(row.iconA11y);
+
+        mHighTempView.setText(row.high);
+        mHighTempView.setContentDescription(row.highA11y);
+
+        mLowTempView.setText(row.low);
+        mLowTempView.setContentDescription(row.lowA11y);
+
+        mHumidityView.setText(row.humidity);
+        mHumidityView.setContentDescription(row.humidityA11y);
+        mHumidityLabelView.setContentDescription(row.humidityA11y);
+
+        mWindView.setText(row.wind);
+        mWindView.setContentDescription(row.windA11y);
+        mWindLabelView.setContentDescription(row.windA11y);
+
+        mPressureView.setText(row.pressure);
+        mPressureView.setContentDescription(row.pressureA11y);
+        mPressureLabelView.setContentDescription(row.pressureA11y);
+
+        // We still need this for the share intent
+        mForecast = row.shareText;
+    }
+
+    /**
+     * Sets up the toolbar, and starts the enter transition postponed until the day is shown.
+     * Both only happen once per view; when the day is shown again only the share intent is
+     * brought up to date.
+     */
+    private void finishShowing() {
         AppCompatActivity activity = (AppCompatActivity)getActivity();
         Toolbar toolbarView = (Toolbar) getView().findViewById(R.id.toolbar);
 
+        if ( mToolbarReady ) {
+            if ( null != toolbarView ) {
+                MenuItem shareItem = toolbarView.getMenu().findItem(R.id.action_share);
+                if ( null != shareItem ) shareItem.setIntent(createShareForecastIntent());
+            }
+            return;
+        }
+        mToolbarReady = true;
+
         // We need to start the enter transition after the data has loaded
         if ( mTransitionAnimation ) {
             activity.supportStartPostponedEnterTransition();
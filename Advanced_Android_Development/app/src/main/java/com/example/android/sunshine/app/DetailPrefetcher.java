@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.app.Fragment;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Gets the details of the days around the visible part of the forecast list ready before any of
+ * them is tapped.
+ *
+ * As the list scrolls, each day within {@link #PREFETCH_DISTANCE} rows of the screen has its
+ * detail row read and formatted on a background thread into the {@link DetailCache}, and its
+ * art downloaded into Glide's disk cache, unless the {@link ArtCache} already has it.  Whatever
+ * is still under way for days that scroll back out of range is cancelled, so a fling only costs
+ * the days it stops at.  The range is only worked out again when the visible rows change, or the
+ * rows themselves do, at which point any day that has dropped out of the cache since is read
+ * again.
+ */
+class DetailPrefetcher extends RecyclerView.OnScrollListener {
+
+    // Rows beyond either edge of the screen to prefetch
+    private static final int PREFETCH_DISTANCE = 3;
+
+    private final Fragment mFragment;
+    private final Context mContext;
+    private final RecyclerView mRecyclerView;
+    private final LinearLayoutManager mLayoutManager;
+    private final ForecastAdapter mAdapter;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    // What is prefetched or being prefetched, by detail URI
+    private final Map<Uri, Prefetch> mPrefetches = new HashMap<Uri, Prefetch>();
+    // The visible rows the prefetches were last worked out for
+    private int mFirstVisible = RecyclerView.NO_POSITION;
+    private int mLastVisible = RecyclerView.NO_POSITION;
+
+    private final Runnable mUpdate = new Runnable() {
+        @Override
+        public void run() {
+            update();
+        }
+    };
+
+    private static class Prefetch {
+        Future<?> row;
+        // The cache generation the row is being read for
+        int rowGeneration;
+        String artUrl;
+        Target<?> art;
+    }
+
+    DetailPrefetcher(Fragment fragment, RecyclerView recyclerView,
+                     LinearLayoutManager layoutManager, ForecastAdapter adapter) {
+        mFragment = fragment;
+        mContext = fragment.getActivity().getApplicationContext();
+        mRecyclerView = recyclerView;
+        mLayoutManager = layoutManager;
+        mAdapter = adapter;
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        // Most scroll steps move no row into or out of view
+        if (mLayoutManager.findFirstVisibleItemPosition() != mFirstVisible
+                || mLayoutManager.findLastVisibleItemPosition() != mLastVisible) {
+            update();
+        }
+    }
+
+    /**
+     * Prefetches for the rows in range once the list has been laid out, for when the rows change
+     * without the list scrolling.  Days already prefetched are checked again, as a change to the
+     * weather or the display preferences drops them from the cache.
+     */
+    void scheduleUpdate() {
+        mFirstVisible = RecyclerView.NO_POSITION;
+        mLastVisible = RecyclerView.NO_POSITION;
+        mRecyclerView.removeCallbacks(mUpdate);
+        mRecyclerView.post(mUpdate);
+    }
+
+    /**
+     * Cancels everything under way and stops prefetching for good.
+     */
+    void shutdown() {
+        mRecyclerView.removeCallbacks(mUpdate);
+        for (Prefetch prefetch : mPrefetches.values()) {
+            cancel(prefetch);
+        }
+        mPrefetches.clear();
+        mExecutor.shutdownNow();
+    }
+
+    private void update() {
+        if (mExecutor.isShutdown()) {
+            return;
+        }
+        Set<Uri> inRange = new HashSet<Uri>();
+        int first = mLayoutManager.findFirstVisibleItemPosition();
+        int last = mLayoutManager.findLastVisibleItemPosition();
+        mFirstVisible = first;
+        mLastVisible = last;
+        if (first != RecyclerView.NO_POSITION) {
+            String locationSetting = Utility.getPreferredLocation(mContext);
+            int from = Math.max(0, first - PREFETCH_DISTANCE);
+            int to = Math.min(mAdapter.getItemCount() - 1, last + PREFETCH_DISTANCE);
+            for (int position = from; position <= to; position++) {
+                ForecastRow row = mAdapter.getRow(position);
+                Uri uri = WeatherEntry.buildWeatherLocationWithDate(locationSetting, row.date);
+                inRange.add(uri);
+                Prefetch prefetch = mPrefetches.get(uri);
+                if (prefetch == null) {
+                    prefetch = new Prefetch();
+                    mPrefetches.put(uri, prefetch);
+                }
+                start(uri, row.todayArtUrl, prefetch);
+            }
+        }
+
+        Iterator<Map.Entry<Uri, Prefetch>> it = mPrefetches.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Uri, Prefetch> entry = it.next();
+            if (!inRange.contains(entry.getKey())) {
+                cancel(entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Starts whatever the prefetch for the day is missing: reading the row if it is neither
+     * cached nor being read for the current cache generation, and downloading the art if its
+     * URL is new.
+     */
+    private void start(final Uri uri, String artUrl, Prefetch prefetch) {
+        final int generation = DetailCache.getGeneration(mContext);
+        boolean reading = prefetch.row != null && !prefetch.row.isDone()
+                && prefetch.rowGeneration == generation;
+        if (!reading && DetailCache.get(mContext, uri) == null) {
+            if (prefetch.row != null) {
+                // Read before the last change, so the cache would not take it anyway
+                prefetch.row.cancel(true);
+            }
+            prefetch.rowGeneration = generation;
+            prefetch.row = mExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    Cursor cursor = mContext.getContentResolver().query(uri,
+                            DetailFragment.DETAIL_COLUMNS, null, null, null);
+                    if (cursor == null) {
+                        return;
+                    }
+                    try {
+                        if (!Thread.currentThread().isInterrupted() && cursor.moveToFirst()) {
+                            DetailCache.put(uri, DetailRow.fromCursor(mContext, cursor),
+                                    generation);
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                }
+            });
+        }
+        if (artUrl == null ? prefetch.artUrl == null : artUrl.equals(prefetch.artUrl)) {
+            return;
+        }
+        if (prefetch.art != null) {
+            Glide.clear(prefetch.art);
+            prefetch.art = null;
+        }
+        prefetch.artUrl = artUrl;
+        if (artUrl != null && !ArtCache.isStored(artUrl)) {
+            // Only the download is worth doing ahead; decoding is quick once it is on disk
+            prefetch.art = Glide.with(mFragment)
+                    .load(artUrl)
+                    .downloadOnly(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL);
+        }
+    }
+
+    private static void cancel(Prefetch prefetch) {
+        if (prefetch.row != null) {
+            prefetch.row.cancel(true);
+        }
+        if (prefetch.art != null) {
+            Glide.clear(prefetch.art);
+        }
+    }
+}
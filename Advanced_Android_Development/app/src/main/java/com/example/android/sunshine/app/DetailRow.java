@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import java.util.Arrays;
+
+/**
+ * Everything {@link DetailFragment} shows for a day, formatted ahead of time so the detail view
+ * can be filled in the moment it is created.
+ *
+ * Rows can be built on any thread, which is how {@link DetailPrefetcher} gets them ready before
+ * a day is even tapped.
+ */
+class DetailRow {
+    final long date;
+    // Art as a resource ID, and where to load it from, or null to use the bundled resource
+    final int artResource;
+    final String artUrl;
+    final String dateText;
+    final String description;
+    final String descriptionA11y;
+    final String iconA11y;
+    final String high;
+    final String highA11y;
+    final String low;
+    final String lowA11y;
+    final String humidity;
+    final String humidityA11y;
+    final String wind;
+    final String windA11y;
+    final String pressure;
+    final String pressureA11y;
+    // What the share action sends
+    final String shareText;
+    // Hash of everything above but the date, to tell whether the views need setting again
+    final int contentHash;
+    // The preferences the row was formatted with
+    private final DisplayConfig mConfig;
+
+    private DetailRow(Context context, Cursor cursor, DisplayConfig config) {
+        mConfig = config;
+        date = cursor.getLong(DetailFragment.COL_WEATHER_DATE);
+        int weatherId = cursor.getInt(DetailFragment.COL_WEATHER_CONDITION_ID);
+        artResource = Utility.getArtResourceForWeatherCondition(weatherId);
+        artUrl = ArtCache.getArtUrl(context, weatherId, ArtCache.SIZE_TODAY);
+
+        dateText = Utility.getFullFriendlyDayString(context, date);
+
+        description = Utility.getStringForWeatherCondition(context, weatherId);
+        descriptionA11y = context.getString(R.string.a11y_forecast, description);
+        iconA11y = context.getString(R.string.a11y_forecast_icon, description);
+
+        double highTemp = cursor.getDouble(DetailFragment.COL_WEATHER_MAX_TEMP);
+        high = config.formatTemperature(highTemp);
+        highA11y = context.getString(R.string.a11y_high_temp, high);
+        double lowTemp = cursor.getDouble(DetailFragment.COL_WEATHER_MIN_TEMP);
+        low = config.formatTemperature(lowTemp);
+        lowA11y = context.getString(R.string.a11y_low_temp, low);
+
+        humidity = context.getString(R.string.format_humidity,
+                cursor.getFloat(DetailFragment.COL_WEATHER_HUMIDITY));
+        humidityA11y = context.getString(R.string.a11y_humidity, humidity);
+        wind = config.formatWind(cursor.getFloat(DetailFragment.COL_WEATHER_WIND_SPEED),
+                cursor.getFloat(DetailFragment.COL_WEATHER_DEGREES));
+        windA11y = context.getString(R.string.a11y_wind, wind);
+        pressure = context.getString(R.string.format_pressure,
+                cursor.getFloat(DetailFragment.COL_WEATHER_PRESSURE));
+        pressureA11y = context.getString(R.string.a11y_pressure, pressure);
+
+        shareText = String.format("%s - %s - %s/%s", dateText, description, highTemp, lowTemp);
+
+        contentHash = Arrays.hashCode(new Object[]{artResource, artUrl, dateText, description,
+                high, low, humidity, wind, pressure});
+    }
+
+    /**
+     * Builds the row for the day the cursor is on, which must have the columns of
+     * {@link DetailFragment#DETAIL_COLUMNS}.
+     */
+    static DetailRow fromCursor(Context context, Cursor cursor) {
+        return new DetailRow(context, cursor, DisplayConfig.get(context));
+    }
+
+    /**
+     * @return true if the row was formatted with the current display preferences
+     */
+    boolean isCurrent(Context context) {
+        return mConfig == DisplayConfig.get(context);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * The preferences and formatters {@link Utility}'s display helpers need, read once and shared.
+ *
+ * Those helpers run for every list row, widget, notification and sync, so reading the
+ * preferences and building date formatters on each call adds up.  The snapshot is dropped when
+ * the units, art pack or location preference changes, or the locale or time zone does, and is
+ * rebuilt on next use.  The formatting itself is done by a {@link DisplayFormat}.
+ */
+class DisplayConfig {
+
+    private static volatile DisplayConfig sConfig;
+    // Registered once per process, and kept here as SharedPreferences only holds it weakly
+    private static SharedPreferences.OnSharedPreferenceChangeListener sPreferenceListener;
+
+    private final boolean mIsMetric;
+    private final String mArtPack;
+    // The art pack's URL for each condition
+    private final String[] mArtUrls = new String[WeatherConditions.COUNT];
+    private final boolean mUsingLocalGraphics;
+    private final String mLocation;
+    private final DisplayFormat mFormat;
+
+    private DisplayConfig(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String metric = context.getString(R.string.pref_units_metric);
+        mIsMetric = prefs.getString(context.getString(R.string.pref_units_key), metric)
+                .equals(metric);
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        mArtPack = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                sunshineArtPack);
+        mUsingLocalGraphics = mArtPack.equals(sunshineArtPack);
+        for (int condition = 0; condition < WeatherConditions.COUNT; condition++) {
+            mArtUrls[condition] = String.format(Locale.US, mArtPack,
+                    WeatherConditions.getArtName(condition));
+        }
+        mLocation = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+        mFormat = new DisplayFormat(mIsMetric, TimeZone.getDefault(),
+                context.getString(R.string.format_temperature),
+                context.getString(mIsMetric ? R.string.format_wind_kmh : R.string.format_wind_mph),
+                context.getString(R.string.format_full_friendly_date),
+                context.getString(R.string.today),
+                context.getString(R.string.tomorrow));
+    }
+
+    static DisplayConfig get(Context context) {
+        DisplayConfig config = sConfig;
+        if (config == null) {
+            synchronized (DisplayConfig.class) {
+                config = sConfig;
+                if (config == null) {
+                    Context appContext = context.getApplicationContext();
+                    if (sPreferenceListener == null) {
+                        listenForChanges(appContext);
+                    }
+                    config = new DisplayConfig(appContext);
+                    sConfig = config;
+                }
+            }
+        }
+        return config;
+    }
+
+    private static void listenForChanges(Context context) {
+        final String unitsKey = context.getString(R.string.pref_units_key);
+        final String artPackKey = context.getString(R.string.pref_art_pack_key);
+        final String locationKey = context.getString(R.string.pref_location_key);
+        sPreferenceListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+            @Override
+            public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                if (unitsKey.equals(key) || artPackKey.equals(key) || locationKey.equals(key)) {
+                    sConfig = null;
+                }
+            }
+        };
+        PreferenceManager.getDefaultSharedPreferences(context)
+                .registerOnSharedPreferenceChangeListener(sPreferenceListener);
+
+        IntentFilter filter = new IntentFilter(Intent.ACTION_LOCALE_CHANGED);
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                sConfig = null;
+            }
+        }, filter);
+    }
+
+    boolean isMetric() {
+        return mIsMetric;
+    }
+
+    /**
+     * @return the art pack's URL format, with a %s for the art name
+     */
+    String getArtPack() {
+        return mArtPack;
+    }
+
+    /**
+     * @return the art pack's URL for the {@link WeatherConditions} condition, or null for
+     * {@link WeatherConditions#UNKNOWN}
+     */
+    String getArtUrl(int condition) {
+        return condition == WeatherConditions.UNKNOWN ? null : mArtUrls[condition];
+    }
+
+    boolean isUsingLocalGraphics() {
+        return mUsingLocalGraphics;
+    }
+
+    String getLocation() {
+        return mLocation;
+    }
+
+    String formatTemperature(double temperature) {
+        return mFormat.formatTemperature(temperature);
+    }
+
+    String formatWind(float windSpeed, float degrees) {
+        return mFormat.formatWind(windSpeed, degrees);
+    }
+
+    String getFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        return mFormat.getFriendlyDayString(dateInMillis, System.currentTimeMillis(),
+                displayLongToday);
+    }
+
+    String getDayName(long dateInMillis) {
+        return mFormat.getDayName(dateInMillis, System.currentTimeMillis());
+    }
+
+    /**
+     * @return the day and date in the form "Today, June 24"
+     */
+    String formatFullFriendlyDate(String day, long dateInMillis) {
+        return mFormat.formatFullFriendlyDate(day, dateInMillis);
+    }
+
+    String formatMonthDay(long dateInMillis) {
+        return mFormat.formatMonthDay(dateInMillis);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+/**
+ * The temperature, wind and date formatting {@link DisplayConfig} hands out, given the strings
+ * it read from the resources.
+ *
+ * Like {@link WeatherFormat}, this is plain Java so the benchmark module can run it.  The date
+ * formatters are not thread safe, so each is only used while holding its lock.
+ */
+public final class DisplayFormat {
+
+    private final boolean mIsMetric;
+    private final TimeZone mTimeZone;
+
+    private final String mTemperatureFormat;
+    private final String mWindFormat;
+    private final String mFullFriendlyDateFormat;
+    private final String mToday;
+    private final String mTomorrow;
+
+    private final SimpleDateFormat mShortDateFormat;
+    private final SimpleDateFormat mDayNameFormat;
+    private final SimpleDateFormat mMonthDayFormat;
+
+    /**
+     * @param temperatureFormat R.string.format_temperature
+     * @param windFormat R.string.format_wind_kmh or R.string.format_wind_mph, to match metric
+     * @param fullFriendlyDateFormat R.string.format_full_friendly_date
+     * @param today R.string.today
+     * @param tomorrow R.string.tomorrow
+     */
+    public DisplayFormat(boolean metric, TimeZone timeZone, String temperatureFormat,
+                         String windFormat, String fullFriendlyDateFormat, String today,
+                         String tomorrow) {
+        mIsMetric = metric;
+        mTimeZone = timeZone;
+        mTemperatureFormat = temperatureFormat;
+        mWindFormat = windFormat;
+        mFullFriendlyDateFormat = fullFriendlyDateFormat;
+        mToday = today;
+        mTomorrow = tomorrow;
+
+        mShortDateFormat = new SimpleDateFormat("EEE MMM dd");
+        mDayNameFormat = new SimpleDateFormat("EEEE");
+        mMonthDayFormat = new SimpleDateFormat("MMMM dd");
+        mShortDateFormat.setTimeZone(timeZone);
+        mDayNameFormat.setTimeZone(timeZone);
+        mMonthDayFormat.setTimeZone(timeZone);
+    }
+
+    public String formatTemperature(double temperature) {
+        // For presentation, assume the user doesn't care about tenths of a degree.
+        return String.format(mTemperatureFormat,
+                WeatherFormat.toDisplayTemperature(temperature, mIsMetric));
+    }
+
+    public String formatWind(float windSpeed, float degrees) {
+        return String.format(mWindFormat, WeatherFormat.toDisplayWindSpeed(windSpeed, mIsMetric),
+                WeatherFormat.getWindDirection(degrees));
+    }
+
+    /**
+     * The day string for forecast uses the following logic:
+     * For today: "Today, June 8"
+     * For tomorrow:  "Tomorrow"
+     * For the next 5 days: "Wednesday" (just the day name)
+     * For all days after that: "Mon Jun 8"
+     *
+     * @param now the current time in milliseconds
+     */
+    public String getFriendlyDayString(long dateInMillis, long now, boolean displayLongToday) {
+        int style = WeatherFormat.getFriendlyDayStyle(dateInMillis, now, getGmtOffset(now),
+                displayLongToday);
+        if (style == WeatherFormat.DAY_STYLE_TODAY) {
+            return formatFullFriendlyDate(mToday, dateInMillis);
+        } else if (style == WeatherFormat.DAY_STYLE_NAME) {
+            return getDayName(dateInMillis, now);
+        }
+        synchronized (mShortDateFormat) {
+            return mShortDateFormat.format(dateInMillis);
+        }
+    }
+
+    /**
+     * @param now the current time in milliseconds
+     * @return "Today", "Tomorrow", or else the name of the day of the week, e.g. "Wednesday"
+     */
+    public String getDayName(long dateInMillis, long now) {
+        long gmtoff = getGmtOffset(now);
+        int julianDay = WeatherFormat.getJulianDay(dateInMillis, gmtoff);
+        int currentJulianDay = WeatherFormat.getJulianDay(now, gmtoff);
+        if (julianDay == currentJulianDay) {
+            return mToday;
+        } else if (julianDay == currentJulianDay + 1) {
+            return mTomorrow;
+        }
+        synchronized (mDayNameFormat) {
+            return mDayNameFormat.format(dateInMillis);
+        }
+    }
+
+    /**
+     * @return the day and date in the form "Today, June 24"
+     */
+    public String formatFullFriendlyDate(String day, long dateInMillis) {
+        return String.format(mFullFriendlyDateFormat, day, formatMonthDay(dateInMillis));
+    }
+
+    /**
+     * @return the date in the form "June 24"
+     */
+    public String formatMonthDay(long dateInMillis) {
+        synchronized (mMonthDayFormat) {
+            return mMonthDayFormat.format(dateInMillis);
+        }
+    }
+
+    /**
+     * @return the offset from UTC at the given time, in seconds
+     */
+    private long getGmtOffset(long timeInMillis) {
+        return mTimeZone.getOffset(timeInMillis) / 1000;
+    }
+}
@@ -30,7 +30,6 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
@@ -45,6 +44,8 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     private boolean mUseTodayLayout = true;
 
     private Cursor mCursor;
+    // What the rows of mCursor show, formatted when it was loaded
+    private ForecastRow[] mRows = new ForecastRow[0];
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
@@ -73,9 +74,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            mClickHandler.onClick(mRows[adapterPosition].date, this);
             mICM.onClick(this);
         }
     }
@@ -124,63 +123,52 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        ForecastRow row = mRows[position];
         int defaultImage;
-        boolean useLongToday;
+        String artUrl;
+        String dateText;
 
         switch (getItemViewType(position)) {
             case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
+                defaultImage = row.artResource;
+                artUrl = row.todayArtUrl;
+                dateText = row.todayDateText;
                 break;
             default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
+                defaultImage = row.iconResource;
+                artUrl = row.artUrl;
+                dateText = row.dateText;
         }
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
+        if ( artUrl == null ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
         } else {
             Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+                    .load(artUrl)
                     .error(defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
         }
 
         // this enables better animations. even if we lose state due to a device rotation,
-        // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
+        // the animator can use this to re-find the original view.  The date rather than the
+        // position, as rows can shift without being bound again.
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + row.date);
 
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        forecastAdapterViewHolder.mDateView.setText(dateText);
 
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
-
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
-
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(row.description);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(row.descriptionA11y);
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        forecastAdapterViewHolder.mHighTempView.setText(row.high);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(row.highA11y);
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mLowTempView.setText(row.low);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(row.lowA11y);
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
     }
@@ -208,16 +196,74 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        return mRows.length;
+    }
+
+    ForecastRow getRow(int position) {
+        return mRows[position];
     }
 
+    /**
+     * Replaces the cursor.  If only some days differ from the current one, only those rows are
+     * updated, so a reload while the user is scrolling does not rebind every row.
+     */
     public void swapCursor(Cursor newCursor) {
+        // Cursors from ForecastLoader come with their rows already formatted
+        ForecastRow[] rows = newCursor instanceof ForecastLoader.ForecastCursor
+                ? ((ForecastLoader.ForecastCursor) newCursor).getRows()
+                : ForecastRow.fromCursor(mContext, newCursor);
+
+        // Everything is rebound when the first day changed, as it has the today layout.  Rows
+        // whose units, art or friendly date changed have a different hash, so are rebound too.
+        ListDiff diff = null;
+        if (mCursor != null && newCursor != null && mRows.length > 0 && rows.length > 0
+                && mRows[0].date == rows[0].date) {
+            diff = ListDiff.calculate(getDates(mRows), getContentHashes(mRows),
+                    getDates(rows), getContentHashes(rows));
+        }
+
         mCursor = newCursor;
-        notifyDataSetChanged();
+        mRows = rows;
+        if (diff != null) {
+            mICM.confirmCheckedPositions(diff);
+            diff.dispatchUpdatesTo(new ListDiff.Callback() {
+                @Override
+                public void onInserted(int position, int count) {
+                    notifyItemRangeInserted(position, count);
+                }
+
+                @Override
+                public void onRemoved(int position, int count) {
+                    notifyItemRangeRemoved(position, count);
+                }
+
+                @Override
+                public void onChanged(int position, int count) {
+                    notifyItemRangeChanged(position, count);
+                }
+            });
+        } else {
+            notifyDataSetChanged();
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
+    private static long[] getDates(ForecastRow[] rows) {
+        long[] dates = new long[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            dates[i] = rows[i].date;
+        }
+        return dates;
+    }
+
+    private static int[] getContentHashes(ForecastRow[] rows) {
+        int[] hashes = new int[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            hashes[i] = rows[i].contentHash;
+        }
+        return hashes;
+    }
+
     public Cursor getCursor() {
         return mCursor;
     }
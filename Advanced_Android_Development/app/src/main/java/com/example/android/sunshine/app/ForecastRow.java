@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import java.util.Arrays;
+
+/**
+ * Everything a row of the forecast list shows, formatted ahead of time so that binding a row is
+ * only a matter of setting views.
+ *
+ * Rows are built by {@link ForecastLoader} on its background thread, once per load, as the
+ * friendly dates and temperatures need date formatters and the user's preferences.
+ */
+class ForecastRow {
+    final long date;
+    // Icon for the list and art for the today layout, as resource IDs
+    final int iconResource;
+    final int artResource;
+    // Where to load the art from for the list and the today layout, or null to use the
+    // bundled resources
+    final String artUrl;
+    final String todayArtUrl;
+    final String dateText;
+    // The date as the today layout shows it, which is longer when it is today
+    final String todayDateText;
+    final String description;
+    final String descriptionA11y;
+    final String high;
+    final String highA11y;
+    final String low;
+    final String lowA11y;
+    // Hash of everything above but the date, to tell whether a row needs binding again
+    final int contentHash;
+
+    private ForecastRow(Context context, Cursor cursor, DisplayConfig config) {
+        date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        int weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        iconResource = Utility.getIconResourceForWeatherCondition(weatherId);
+        artResource = Utility.getArtResourceForWeatherCondition(weatherId);
+        artUrl = ArtCache.getArtUrl(context, weatherId, ArtCache.SIZE_LIST);
+        todayArtUrl = ArtCache.getArtUrl(context, weatherId, ArtCache.SIZE_TODAY);
+
+        dateText = Utility.getFriendlyDayString(context, date, false);
+        todayDateText = Utility.getFriendlyDayString(context, date, true);
+
+        description = Utility.getStringForWeatherCondition(context, weatherId);
+        descriptionA11y = context.getString(R.string.a11y_forecast, description);
+        high = config.formatTemperature(cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP));
+        highA11y = context.getString(R.string.a11y_high_temp, high);
+        low = config.formatTemperature(cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP));
+        lowA11y = context.getString(R.string.a11y_low_temp, low);
+
+        contentHash = Arrays.hashCode(new Object[]{iconResource, artResource, artUrl,
+                todayArtUrl, dateText, todayDateText, description, high, low});
+    }
+
+    /**
+     * Builds a row for every day in the cursor, which must have the columns of
+     * {@link ForecastFragment}'s projection.
+     */
+    static ForecastRow[] fromCursor(Context context, Cursor cursor) {
+        if (cursor == null) {
+            return new ForecastRow[0];
+        }
+        DisplayConfig config = DisplayConfig.get(context);
+        ForecastRow[] rows = new ForecastRow[cursor.getCount()];
+        for (int i = 0; i < rows.length; i++) {
+            cursor.moveToPosition(i);
+            rows[i] = new ForecastRow(context, cursor, config);
+        }
+        return rows;
+    }
+}
@@ -28,8 +28,9 @@ import android.widget.AbsListView;
 import android.widget.Checkable;
 
 /**
- * The ItemChoiceManager class keeps track of which positions have been selected.  Note that it
- * doesn't take advantage of new adapter features to track changes in the underlying data.
+ * The ItemChoiceManager class keeps track of which positions have been selected.  When the
+ * adapter updates only some of its items, it passes the {@link ListDiff} along so the selection
+ * follows the items that moved.
  */
 public class ItemChoiceManager {
     private final String LOG_TAG = MainActivity.class.getSimpleName();
@@ -37,14 +38,6 @@ public class ItemChoiceManager {
     private int mChoiceMode;
 
     private RecyclerView.Adapter mAdapter;
-    private RecyclerView.AdapterDataObserver mAdapterDataObserver = new RecyclerView.AdapterDataObserver() {
-        @Override
-        public void onChanged() {
-            super.onChanged();
-            if (mAdapter != null && mAdapter.hasStableIds())
-                confirmCheckedPositionsById(mAdapter.getItemCount());
-        }
-    };
 
     private ItemChoiceManager() {
     }
@@ -55,13 +48,6 @@ public class ItemChoiceManager {
         mAdapter = adapter;
     }
 
-    /**
-     * How many positions in either direction we will search to try to
-     * find a checked item with a stable ID that moved position across
-     * a data set change. If the item isn't found it will be unselected.
-     */
-    private static final int CHECK_POSITION_SEARCH_DISTANCE = 20;
-
     /**
      * Running state of which positions are currently checked
      */
@@ -154,36 +140,27 @@ public class ItemChoiceManager {
         mCheckedIdStates.clear();
     }
 
-    void confirmCheckedPositionsById(int oldItemCount) {
-        // Clear out the positional check states, we'll rebuild it below from IDs.
-        mCheckStates.clear();
+    /**
+     * Moves the checked positions to where their items are after the update, and unchecks the
+     * items that were removed.  Must be called before the update is dispatched.
+     */
+    void confirmCheckedPositions(ListDiff diff) {
+        SparseBooleanArray checkStates = new SparseBooleanArray();
+        for (int i = 0; i < mCheckStates.size(); i++) {
+            int newPosition = diff.getNewPosition(mCheckStates.keyAt(i));
+            if (newPosition != ListDiff.NO_POSITION) {
+                checkStates.put(newPosition, mCheckStates.valueAt(i));
+            }
+        }
+        mCheckStates = checkStates;
 
         for (int checkedIndex = 0; checkedIndex < mCheckedIdStates.size(); checkedIndex++) {
-            final long id = mCheckedIdStates.keyAt(checkedIndex);
-            final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
-
-            final long lastPosId = mAdapter.getItemId(lastPos);
-            if (id != lastPosId) {
-                // Look around to see if the ID is nearby. If not, uncheck it.
-                final int start = Math.max(0, lastPos - CHECK_POSITION_SEARCH_DISTANCE);
-                final int end = Math.min(lastPos + CHECK_POSITION_SEARCH_DISTANCE, oldItemCount);
-                boolean found = false;
-                for (int searchPos = start; searchPos < end; searchPos++) {
-                    final long searchId = mAdapter.getItemId(searchPos);
-                    if (id == searchId) {
-                        found = true;
-                        mCheckStates.put(searchPos, true);
-                        mCheckedIdStates.setValueAt(checkedIndex, searchPos);
-                        break;
-                    }
-                }
-
-                if (!found) {
-                    mCheckedIdStates.delete(id);
-                    checkedIndex--;
-                }
+            int newPosition = diff.getNewPosition(mCheckedIdStates.valueAt(checkedIndex));
+            if (newPosition != ListDiff.NO_POSITION) {
+                mCheckedIdStates.setValueAt(checkedIndex, newPosition);
             } else {
-                mCheckStates.put(lastPos, true);
+                mCheckedIdStates.removeAt(checkedIndex);
+                checkedIndex--;
             }
         }
     }
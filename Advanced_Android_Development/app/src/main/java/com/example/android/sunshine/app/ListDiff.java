@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+/**
+ * The difference between two versions of a list whose items are identified by ascending keys,
+ * such as forecast days sorted by date, along with a hash of what each item shows.
+ *
+ * Since both lists are in key order, items can only be inserted, removed or changed, never
+ * moved, and the difference is found in a single pass over the two.
+ */
+class ListDiff {
+
+    static final int NO_POSITION = -1;
+
+    interface Callback {
+        void onInserted(int position, int count);
+
+        void onRemoved(int position, int count);
+
+        void onChanged(int position, int count);
+    }
+
+    private static final int OP_NONE = 0;
+    private static final int OP_INSERT = 1;
+    private static final int OP_REMOVE = 2;
+    private static final int OP_CHANGE = 3;
+
+    private final long[] mOldKeys;
+    private final int[] mOldHashes;
+    private final long[] mNewKeys;
+    private final int[] mNewHashes;
+    // The position each old item has in the new list, or NO_POSITION if it was removed
+    private final int[] mOldToNew;
+
+    private ListDiff(long[] oldKeys, int[] oldHashes, long[] newKeys, int[] newHashes) {
+        mOldKeys = oldKeys;
+        mOldHashes = oldHashes;
+        mNewKeys = newKeys;
+        mNewHashes = newHashes;
+        mOldToNew = new int[oldKeys.length];
+
+        int i = 0;
+        int j = 0;
+        while (i < oldKeys.length) {
+            if (j == newKeys.length || oldKeys[i] < newKeys[j]) {
+                mOldToNew[i++] = NO_POSITION;
+            } else if (oldKeys[i] > newKeys[j]) {
+                j++;
+            } else {
+                mOldToNew[i++] = j++;
+            }
+        }
+    }
+
+    /**
+     * @return the difference, or null if either list is not in strictly ascending key order
+     */
+    static ListDiff calculate(long[] oldKeys, int[] oldHashes, long[] newKeys, int[] newHashes) {
+        if (!isAscending(oldKeys) || !isAscending(newKeys)) {
+            return null;
+        }
+        return new ListDiff(oldKeys, oldHashes, newKeys, newHashes);
+    }
+
+    /**
+     * @return where the item at the given position of the old list is now, or
+     * {@link #NO_POSITION} if it was removed
+     */
+    int getNewPosition(int oldPosition) {
+        if (oldPosition < 0 || oldPosition >= mOldToNew.length) {
+            return NO_POSITION;
+        }
+        return mOldToNew[oldPosition];
+    }
+
+    /**
+     * Reports the removals, insertions and changes that turn the old list into the new one, with
+     * runs of neighbouring items reported together.  Each position is relative to the list as
+     * it stands after the updates reported before it, as RecyclerView expects.
+     */
+    void dispatchUpdatesTo(Callback callback) {
+        int op = OP_NONE;
+        int opStart = 0;
+        int opCount = 0;
+
+        int i = 0;
+        int j = 0;
+        // Where the next item is in the list as updated so far
+        int position = 0;
+        while (i < mOldKeys.length || j < mNewKeys.length) {
+            int next;
+            if (j == mNewKeys.length || (i < mOldKeys.length && mOldKeys[i] < mNewKeys[j])) {
+                next = OP_REMOVE;
+                i++;
+            } else if (i == mOldKeys.length || mOldKeys[i] > mNewKeys[j]) {
+                next = OP_INSERT;
+                j++;
+            } else {
+                next = mOldHashes[i] == mNewHashes[j] ? OP_NONE : OP_CHANGE;
+                i++;
+                j++;
+            }
+
+            // A removal leaves the position where it is, so runs of them share a position
+            boolean extendsRun = next == op
+                    && (next == OP_REMOVE ? opStart == position : opStart + opCount == position);
+            if (!extendsRun) {
+                dispatch(callback, op, opStart, opCount);
+                op = next;
+                opStart = position;
+                opCount = 0;
+            }
+            opCount++;
+            if (next != OP_REMOVE) {
+                position++;
+            }
+        }
+        dispatch(callback, op, opStart, opCount);
+    }
+
+    private static void dispatch(Callback callback, int op, int start, int count) {
+        switch (op) {
+            case OP_INSERT:
+                callback.onInserted(start, count);
+                break;
+            case OP_REMOVE:
+                callback.onRemoved(start, count);
+                break;
+            case OP_CHANGE:
+                callback.onChanged(start, count);
+                break;
+        }
+    }
+
+    private static boolean isAscending(long[] keys) {
+        for (int i = 1; i < keys.length; i++) {
+            if (keys[i] <= keys[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -21,6 +21,7 @@ import android.content.SharedPreferences;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.ListPreference;
+import android.preference.MultiSelectListPreference;
 import android.preference.Preference;
 import android.preference.PreferenceActivity;
 import android.preference.PreferenceManager;
@@ -35,6 +36,12 @@ import com.google.android.gms.location.places.Place;
 import com.google.android.gms.location.places.ui.PlacePicker;
 import com.google.android.gms.maps.model.LatLng;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+
 /**
  * A {@link PreferenceActivity} that presents a set of application settings.
  * <p>
@@ -59,7 +66,8 @@ public class SettingsActivity extends PreferenceActivity
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_location_key)));
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_units_key)));
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_art_pack_key)));
-
+        bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_history_key)));
+        bindSavedLocations();
 
         // If we are using a PlacePicker location, we need to show attributions.
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
@@ -106,6 +114,35 @@ public class SettingsActivity extends PreferenceActivity
                         .getString(preference.getKey(), ""));
     }
 
+    /**
+     * Lists the saved locations as the entries of their preference, all checked, so unchecking
+     * one stops it being kept in sync.
+     */
+    private void bindSavedLocations() {
+        MultiSelectListPreference preference = (MultiSelectListPreference)
+                findPreference(getString(R.string.pref_saved_locations_key));
+        // Sorted by what is shown, while the values keep any coordinates saved with each
+        List<String> locations = new ArrayList<String>(Utility.getSavedLocations(this));
+        Collections.sort(locations, new Comparator<String>() {
+            @Override
+            public int compare(String lhs, String rhs) {
+                return Utility.getSavedLocationSetting(lhs)
+                        .compareTo(Utility.getSavedLocationSetting(rhs));
+            }
+        });
+        String[] entries = new String[locations.size()];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = Utility.getSavedLocationSetting(locations.get(i));
+        }
+        preference.setEntries(entries);
+        preference.setEntryValues(locations.toArray(new String[locations.size()]));
+        preference.setValues(new HashSet<String>(locations));
+        preference.setEnabled(!locations.isEmpty());
+        preference.setSummary(locations.isEmpty()
+                ? getString(R.string.pref_saved_locations_none)
+                : TextUtils.join(", ", entries));
+    }
+
     private void setPreferenceSummary(Preference preference, Object value) {
         String stringValue = value.toString();
         String key = preference.getKey();
@@ -145,6 +182,15 @@ public class SettingsActivity extends PreferenceActivity
     // This gets called before the preference is changed
     @Override
     public boolean onPreferenceChange(Preference preference, Object value) {
+        if (preference.getKey().equals(getString(R.string.pref_location_key))) {
+            // Keep the location being replaced in sync, in case the user switches back
+            Utility.saveLocation(this, value.toString());
+        } else if (preference.getKey().equals(getString(R.string.pref_art_pack_key))
+                && value.equals(((ListPreference) preference).getValue())) {
+            // Picking the same pack again changes no preference, but is a request to retry
+            // downloading whatever of it is missing
+            ArtCache.updateInBackground(this, true);
+        }
         setPreferenceSummary(preference, value);
         return true;
     }
@@ -175,9 +221,14 @@ public class SettingsActivity extends PreferenceActivity
             // our location status has changed.  Update the summary accordingly
             Preference locationPreference = findPreference(getString(R.string.pref_location_key));
             bindPreferenceSummaryToValue(locationPreference);
+        } else if ( key.equals(getString(R.string.pref_saved_locations_key)) ) {
+            // a location was saved or removed.  Syncs pick the change up by themselves.
+            bindSavedLocations();
         } else if ( key.equals(getString(R.string.pref_art_pack_key)) ) {
             // art pack have changed. update lists of weather entries accordingly
             getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            // and swap the stored art of the old pack for the new one
+            ArtCache.updateInBackground(this, true);
         }
     }
 
@@ -203,6 +254,10 @@ public class SettingsActivity extends PreferenceActivity
                     address = String.format("(%.2f, %.2f)",latLong.latitude, latLong.longitude);
                 }
 
+                // Keep the location being replaced in sync, in case the user switches back
+                Utility.saveLocation(this, address);
+                bindSavedLocations();
+
                 SharedPreferences sharedPreferences =
                         PreferenceManager.getDefaultSharedPreferences(this);
                 SharedPreferences.Editor editor = sharedPreferences.edit();
@@ -20,19 +20,82 @@ import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.preference.PreferenceManager;
-import android.text.format.Time;
 
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
-import java.util.Locale;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 
 public class Utility {
     // We'll default our latlong to 0. Yay, "Earth!"
     public static float DEFAULT_LATLONG = 0F;
 
+    // Most locations kept in sync besides the preferred one
+    public static final int MAX_SAVED_LOCATIONS = 4;
+
+    // Indexed by WeatherConditions condition
+    private static final int[] ICON_RESOURCES = {
+            R.drawable.ic_storm, R.drawable.ic_light_rain, R.drawable.ic_rain, R.drawable.ic_snow,
+            R.drawable.ic_fog, R.drawable.ic_clear, R.drawable.ic_light_clouds, R.drawable.ic_cloudy
+    };
+    private static final int[] ART_RESOURCES = {
+            R.drawable.art_storm, R.drawable.art_light_rain, R.drawable.art_rain,
+            R.drawable.art_snow, R.drawable.art_fog, R.drawable.art_clear,
+            R.drawable.art_light_clouds, R.drawable.art_clouds
+    };
+
+    // Description of every code from WeatherConditions.MIN_CODE on, 0 where there is none
+    private static final int[] CONDITION_STRINGS =
+            new int[WeatherConditions.MAX_CODE - WeatherConditions.MIN_CODE + 1];
+
+    static {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        for (int code = 200; code <= 232; code++) {
+            CONDITION_STRINGS[code - WeatherConditions.MIN_CODE] = R.string.condition_2xx;
+        }
+        for (int code = 300; code <= 321; code++) {
+            CONDITION_STRINGS[code - WeatherConditions.MIN_CODE] = R.string.condition_3xx;
+        }
+        int[][] codes = {
+            {500, R.string.condition_500}, {501, R.string.condition_501},
+            {502, R.string.condition_502}, {503, R.string.condition_503},
+            {504, R.string.condition_504}, {511, R.string.condition_511},
+            {520, R.string.condition_520}, {531, R.string.condition_531},
+            {600, R.string.condition_600}, {601, R.string.condition_601},
+            {602, R.string.condition_602}, {611, R.string.condition_611},
+            {612, R.string.condition_612}, {615, R.string.condition_615},
+            {616, R.string.condition_616}, {620, R.string.condition_620},
+            {621, R.string.condition_621}, {622, R.string.condition_622},
+            {701, R.string.condition_701}, {711, R.string.condition_711},
+            {721, R.string.condition_721}, {731, R.string.condition_731},
+            {741, R.string.condition_741}, {751, R.string.condition_751},
+            {761, R.string.condition_761}, {762, R.string.condition_762},
+            {771, R.string.condition_771}, {781, R.string.condition_781},
+            {800, R.string.condition_800}, {801, R.string.condition_801},
+            {802, R.string.condition_802}, {803, R.string.condition_803},
+            {804, R.string.condition_804}, {900, R.string.condition_900},
+            {901, R.string.condition_901}, {902, R.string.condition_902},
+            {903, R.string.condition_903}, {904, R.string.condition_904},
+            {905, R.string.condition_905}, {906, R.string.condition_906},
+            {951, R.string.condition_951}, {952, R.string.condition_952},
+            {953, R.string.condition_953}, {954, R.string.condition_954},
+            {955, R.string.condition_955}, {956, R.string.condition_956},
+            {957, R.string.condition_957}, {958, R.string.condition_958},
+            {959, R.string.condition_959}, {960, R.string.condition_960},
+            {961, R.string.condition_961}, {962, R.string.condition_962}
+        };
+        for (int[] code : codes) {
+            CONDITION_STRINGS[code[0] - WeatherConditions.MIN_CODE] = code[1];
+        }
+    }
+
     public static boolean isLocationLatLonAvailable(Context context) {
         SharedPreferences prefs
                 = PreferenceManager.getDefaultSharedPreferences(context);
@@ -55,28 +118,144 @@ public class Utility {
     }
 
     public static String getPreferredLocation(Context context) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        return prefs.getString(context.getString(R.string.pref_location_key),
-                context.getString(R.string.pref_location_default));
+        return DisplayConfig.get(context).getLocation();
     }
 
-    public static boolean isMetric(Context context) {
+    /**
+     * A location to sync, with the coordinates to query it by when it came from the Place Picker.
+     * OWM may not understand the addresses Google formats, so those are never queried by name.
+     */
+    public static final class SyncLocation {
+        // Separates the parts of a saved location, as no location setting can hold it
+        private static final String SEPARATOR = "\n";
+
+        public final String setting;
+        // Both null unless the location came from the Place Picker
+        public final String latitude;
+        public final String longitude;
+
+        SyncLocation(String setting, String latitude, String longitude) {
+            this.setting = setting;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        /**
+         * @return the form the location is saved in, which {@link #decode} reads back
+         */
+        String encode() {
+            return latitude == null ? setting : setting + SEPARATOR + latitude + SEPARATOR
+                    + longitude;
+        }
+
+        static SyncLocation decode(String saved) {
+            String[] parts = saved.split(SEPARATOR);
+            return parts.length == 3 ? new SyncLocation(parts[0], parts[1], parts[2])
+                    : new SyncLocation(saved, null, null);
+        }
+    }
+
+    /**
+     * Returns the locations a sync should refresh.  The preferred location always comes first,
+     * followed by any other saved locations in no particular order.
+     *
+     * @param context Context used to get the SharedPreferences
+     * @return the locations to sync, never empty
+     */
+    public static List<SyncLocation> getSyncLocations(Context context) {
+        SyncLocation preferredLocation = getPreferredSyncLocation(context);
+        Set<String> savedLocations = getSavedLocations(context);
+
+        List<SyncLocation> locations = new ArrayList<SyncLocation>(savedLocations.size() + 1);
+        locations.add(preferredLocation);
+        for (String saved : savedLocations) {
+            SyncLocation location = SyncLocation.decode(saved);
+            if (!location.setting.equals(preferredLocation.setting)) {
+                locations.add(location);
+            }
+        }
+        return locations;
+    }
+
+    private static SyncLocation getPreferredSyncLocation(Context context) {
+        // We no longer need just the location String, but also potentially the latitude and
+        // longitude, in case we are syncing based on a Place Picker API result.
+        if (isLocationLatLonAvailable(context)) {
+            return new SyncLocation(getPreferredLocation(context),
+                    String.valueOf(getLocationLatitude(context)),
+                    String.valueOf(getLocationLongitude(context)));
+        }
+        return new SyncLocation(getPreferredLocation(context), null, null);
+    }
+
+    /**
+     * @return the locations kept in sync besides the preferred one, in their saved form.  The
+     * setting of each is {@link #getSavedLocationSetting}.
+     */
+    public static Set<String> getSavedLocations(Context context) {
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        return prefs.getString(context.getString(R.string.pref_units_key),
-                context.getString(R.string.pref_units_metric))
-                .equals(context.getString(R.string.pref_units_metric));
+        return prefs.getStringSet(context.getString(R.string.pref_saved_locations_key),
+                Collections.<String>emptySet());
     }
 
-    public static String formatTemperature(Context context, double temperature) {
-        // Data stored in Celsius by default.  If user prefers to see in Fahrenheit, convert
-        // the values here.
-        String suffix = "\u00B0";
-        if (!isMetric(context)) {
-            temperature = (temperature * 1.8) + 32;
+    /**
+     * @param savedLocation one of {@link #getSavedLocations}
+     * @return the location setting to show for it
+     */
+    public static String getSavedLocationSetting(String savedLocation) {
+        return SyncLocation.decode(savedLocation).setting;
+    }
+
+    /**
+     * Keeps the preferred location in sync as the user switches away from it, so switching back
+     * finds its forecast already there.  Place Picker coordinates are saved along with it.  The
+     * location switched to is dropped from the saved ones, as it is synced as the preferred
+     * location from now on.  Once {@link #MAX_SAVED_LOCATIONS} are saved no more are added,
+     * until some are removed in the settings.  Call it before the preference changes.
+     */
+    public static void saveLocation(Context context, String newLocation) {
+        SyncLocation previousLocation = getPreferredSyncLocation(context);
+        // The set handed out by the preferences must not be modified
+        Set<String> savedLocations = new HashSet<String>(getSavedLocations(context));
+        boolean changed = false;
+        Iterator<String> it = savedLocations.iterator();
+        while (it.hasNext()) {
+            String setting = getSavedLocationSetting(it.next());
+            // A location saved before is saved again as it is now
+            if (setting.equals(newLocation) || setting.equals(previousLocation.setting)) {
+                it.remove();
+                changed = true;
+            }
         }
+        if (!previousLocation.setting.equals(newLocation)
+                && savedLocations.size() < MAX_SAVED_LOCATIONS) {
+            changed |= savedLocations.add(previousLocation.encode());
+        }
+        if (changed) {
+            PreferenceManager.getDefaultSharedPreferences(context).edit()
+                    .putStringSet(context.getString(R.string.pref_saved_locations_key),
+                            savedLocations)
+                    .apply();
+        }
+    }
+
+    /**
+     * @return how many months of the weather of days that are over should be kept
+     */
+    public static int getHistoryMonths(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return Integer.parseInt(prefs.getString(context.getString(R.string.pref_history_key),
+                context.getString(R.string.pref_history_default)));
+    }
+
+    public static boolean isMetric(Context context) {
+        return DisplayConfig.get(context).isMetric();
+    }
 
-        // For presentation, assume the user doesn't care about tenths of a degree.
-        return String.format(context.getString(R.string.format_temperature), temperature);
+    public static String formatTemperature(Context context, double temperature) {
+        // Data stored in Celsius by default.  If user prefers to see in Fahrenheit, it is
+        // converted here.
+        return DisplayConfig.get(context).formatTemperature(temperature);
     }
 
     static String formatDate(long dateInMilliseconds) {
@@ -102,30 +281,7 @@ public class Utility {
         // For tomorrow:  "Tomorrow"
         // For the next 5 days: "Wednesday" (just the day name)
         // For all days after that: "Mon Jun 8"
-
-        Time time = new Time();
-        time.setToNow();
-        long currentTime = System.currentTimeMillis();
-        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
-        int currentJulianDay = Time.getJulianDay(currentTime, time.gmtoff);
-
-        // If the date we're building the String for is today's date, the format
-        // is "Today, June 24"
-        if (displayLongToday && julianDay == currentJulianDay) {
-            String today = context.getString(R.string.today);
-            int formatId = R.string.format_full_friendly_date;
-            return String.format(context.getString(
-                    formatId,
-                    today,
-                    getFormattedMonthDay(context, dateInMillis)));
-        } else if ( julianDay < currentJulianDay + 7 ) {
-            // If the input date is less than a week in the future, just return the day name.
-            return getDayName(context, dateInMillis);
-        } else {
-            // Otherwise, use the form "Mon Jun 3"
-            SimpleDateFormat shortenedDateFormat = new SimpleDateFormat("EEE MMM dd");
-            return shortenedDateFormat.format(dateInMillis);
-        }
+        return DisplayConfig.get(context).getFriendlyDayString(dateInMillis, displayLongToday);
     }
 
     /**
@@ -138,12 +294,8 @@ public class Utility {
      */
     public static String getFullFriendlyDayString(Context context, long dateInMillis) {
 
-        String day = getDayName(context, dateInMillis);
-        int formatId = R.string.format_full_friendly_date;
-        return String.format(context.getString(
-                formatId,
-                day,
-                getFormattedMonthDay(context, dateInMillis)));
+        DisplayConfig config = DisplayConfig.get(context);
+        return config.formatFullFriendlyDate(config.getDayName(dateInMillis), dateInMillis);
     }
 
     /**
@@ -156,23 +308,8 @@ public class Utility {
      */
     public static String getDayName(Context context, long dateInMillis) {
         // If the date is today, return the localized version of "Today" instead of the actual
-        // day name.
-
-        Time t = new Time();
-        t.setToNow();
-        int julianDay = Time.getJulianDay(dateInMillis, t.gmtoff);
-        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), t.gmtoff);
-        if (julianDay == currentJulianDay) {
-            return context.getString(R.string.today);
-        } else if ( julianDay == currentJulianDay +1 ) {
-            return context.getString(R.string.tomorrow);
-        } else {
-            Time time = new Time();
-            time.setToNow();
-            // Otherwise, the format is just the day of the week (e.g "Wednesday".
-            SimpleDateFormat dayFormat = new SimpleDateFormat("EEEE");
-            return dayFormat.format(dateInMillis);
-        }
+        // day name.  Otherwise, the format is just the day of the week (e.g "Wednesday").
+        return DisplayConfig.get(context).getDayName(dateInMillis);
     }
 
     /**
@@ -183,45 +320,11 @@ public class Utility {
      * @return The day in the form of a string formatted "December 6"
      */
     public static String getFormattedMonthDay(Context context, long dateInMillis ) {
-        Time time = new Time();
-        time.setToNow();
-        SimpleDateFormat dbDateFormat = new SimpleDateFormat(Utility.DATE_FORMAT);
-        SimpleDateFormat monthDayFormat = new SimpleDateFormat("MMMM dd");
-        String monthDayString = monthDayFormat.format(dateInMillis);
-        return monthDayString;
+        return DisplayConfig.get(context).formatMonthDay(dateInMillis);
     }
 
     public static String getFormattedWind(Context context, float windSpeed, float degrees) {
-        int windFormat;
-        if (Utility.isMetric(context)) {
-            windFormat = R.string.format_wind_kmh;
-        } else {
-            windFormat = R.string.format_wind_mph;
-            windSpeed = .621371192237334f * windSpeed;
-        }
-
-        // From wind direction in degrees, determine compass direction as a string (e.g NW)
-        // You know what's fun, writing really long if/else statements with tons of possible
-        // conditions.  Seriously, try it!
-        String direction = "Unknown";
-        if (degrees >= 337.5 || degrees < 22.5) {
-            direction = "N";
-        } else if (degrees >= 22.5 && degrees < 67.5) {
-            direction = "NE";
-        } else if (degrees >= 67.5 && degrees < 112.5) {
-            direction = "E";
-        } else if (degrees >= 112.5 && degrees < 157.5) {
-            direction = "SE";
-        } else if (degrees >= 157.5 && degrees < 202.5) {
-            direction = "S";
-        } else if (degrees >= 202.5 && degrees < 247.5) {
-            direction = "SW";
-        } else if (degrees >= 247.5 && degrees < 292.5) {
-            direction = "W";
-        } else if (degrees >= 292.5 && degrees < 337.5) {
-            direction = "NW";
-        }
-        return String.format(context.getString(windFormat), windSpeed, direction);
+        return DisplayConfig.get(context).formatWind(windSpeed, degrees);
     }
 
     /**
@@ -231,32 +334,8 @@ public class Utility {
      * @return resource id for the corresponding icon. -1 if no relation is found.
      */
     public static int getIconResourceForWeatherCondition(int weatherId) {
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.ic_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.ic_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.ic_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.ic_fog;
-        } else if (weatherId == 761 || weatherId == 781) {
-            return R.drawable.ic_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.ic_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.ic_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.ic_cloudy;
-        }
-        return -1;
+        int condition = WeatherConditions.getCondition(weatherId);
+        return condition == WeatherConditions.UNKNOWN ? -1 : ICON_RESOURCES[condition];
     }
 
     /**
@@ -266,10 +345,7 @@ public class Utility {
      * @return true if Sunshine is using local graphics, false otherwise.
      */
     public static boolean usingLocalGraphics(Context context) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
-        return prefs.getString(context.getString(R.string.pref_art_pack_key),
-                sunshineArtPack).equals(sunshineArtPack);
+        return DisplayConfig.get(context).isUsingLocalGraphics();
     }
 
     /**
@@ -281,36 +357,7 @@ public class Utility {
      * @return url for the corresponding weather artwork. null if no relation is found.
      */
     public static String getArtUrlForWeatherCondition(Context context, int weatherId) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        String formatArtUrl = prefs.getString(context.getString(R.string.pref_art_pack_key),
-                context.getString(R.string.pref_art_pack_sunshine));
-
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        if (weatherId >= 200 && weatherId <= 232) {
-            return String.format(Locale.US, formatArtUrl, "storm");
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return String.format(Locale.US, formatArtUrl, "light_rain");
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return String.format(Locale.US, formatArtUrl, "rain");
-        } else if (weatherId == 511) {
-            return String.format(Locale.US, formatArtUrl, "snow");
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return String.format(Locale.US, formatArtUrl, "rain");
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return String.format(Locale.US, formatArtUrl, "snow");
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return String.format(Locale.US, formatArtUrl, "fog");
-        } else if (weatherId == 761 || weatherId == 781) {
-            return String.format(Locale.US, formatArtUrl, "storm");
-        } else if (weatherId == 800) {
-            return String.format(Locale.US, formatArtUrl, "clear");
-        } else if (weatherId == 801) {
-            return String.format(Locale.US, formatArtUrl, "light_clouds");
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return String.format(Locale.US, formatArtUrl, "clouds");
-        }
-        return null;
+        return DisplayConfig.get(context).getArtUrl(WeatherConditions.getCondition(weatherId));
     }
 
     /**
@@ -320,32 +367,8 @@ public class Utility {
      * @return resource id for the corresponding icon. -1 if no relation is found.
      */
     public static int getArtResourceForWeatherCondition(int weatherId) {
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.art_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.art_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.art_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.art_fog;
-        } else if (weatherId == 761 || weatherId == 781) {
-            return R.drawable.art_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.art_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.art_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.art_clouds;
-        }
-        return -1;
+        int condition = WeatherConditions.getCondition(weatherId);
+        return condition == WeatherConditions.UNKNOWN ? -1 : ART_RESOURCES[condition];
     }
 
     /**
@@ -356,172 +379,11 @@ public class Utility {
      * @return string for the weather condition. null if no relation is found.
      */
     public static String getStringForWeatherCondition(Context context, int weatherId) {
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        int stringId;
-        if (weatherId >= 200 && weatherId <= 232) {
-            stringId = R.string.condition_2xx;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            stringId = R.string.condition_3xx;
-        } else switch (weatherId) {
-            case 500:
-                stringId = R.string.condition_500;
-                break;
-            case 501:
-                stringId = R.string.condition_501;
-                break;
-            case 502:
-                stringId = R.string.condition_502;
-                break;
-            case 503:
-                stringId = R.string.condition_503;
-                break;
-            case 504:
-                stringId = R.string.condition_504;
-                break;
-            case 511:
-                stringId = R.string.condition_511;
-                break;
-            case 520:
-                stringId = R.string.condition_520;
-                break;
-            case 531:
-                stringId = R.string.condition_531;
-                break;
-            case 600:
-                stringId = R.string.condition_600;
-                break;
-            case 601:
-                stringId = R.string.condition_601;
-                break;
-            case 602:
-                stringId = R.string.condition_602;
-                break;
-            case 611:
-                stringId = R.string.condition_611;
-                break;
-            case 612:
-                stringId = R.string.condition_612;
-                break;
-            case 615:
-                stringId = R.string.condition_615;
-                break;
-            case 616:
-                stringId = R.string.condition_616;
-                break;
-            case 620:
-                stringId = R.string.condition_620;
-                break;
-            case 621:
-                stringId = R.string.condition_621;
-                break;
-            case 622:
-                stringId = R.string.condition_622;
-                break;
-            case 701:
-                stringId = R.string.condition_701;
-                break;
-            case 711:
-                stringId = R.string.condition_711;
-                break;
-            case 721:
-                stringId = R.string.condition_721;
-                break;
-            case 731:
-                stringId = R.string.condition_731;
-                break;
-            case 741:
-                stringId = R.string.condition_741;
-                break;
-            case 751:
-                stringId = R.string.condition_751;
-                break;
-            case 761:
-                stringId = R.string.condition_761;
-                break;
-            case 762:
-                stringId = R.string.condition_762;
-                break;
-            case 771:
-                stringId = R.string.condition_771;
-                break;
-            case 781:
-                stringId = R.string.condition_781;
-                break;
-            case 800:
-                stringId = R.string.condition_800;
-                break;
-            case 801:
-                stringId = R.string.condition_801;
-                break;
-            case 802:
-                stringId = R.string.condition_802;
-                break;
-            case 803:
-                stringId = R.string.condition_803;
-                break;
-            case 804:
-                stringId = R.string.condition_804;
-                break;
-            case 900:
-                stringId = R.string.condition_900;
-                break;
-            case 901:
-                stringId = R.string.condition_901;
-                break;
-            case 902:
-                stringId = R.string.condition_902;
-                break;
-            case 903:
-                stringId = R.string.condition_903;
-                break;
-            case 904:
-                stringId = R.string.condition_904;
-                break;
-            case 905:
-                stringId = R.string.condition_905;
-                break;
-            case 906:
-                stringId = R.string.condition_906;
-                break;
-            case 951:
-                stringId = R.string.condition_951;
-                break;
-            case 952:
-                stringId = R.string.condition_952;
-                break;
-            case 953:
-                stringId = R.string.condition_953;
-                break;
-            case 954:
-                stringId = R.string.condition_954;
-                break;
-            case 955:
-                stringId = R.string.condition_955;
-                break;
-            case 956:
-                stringId = R.string.condition_956;
-                break;
-            case 957:
-                stringId = R.string.condition_957;
-                break;
-            case 958:
-                stringId = R.string.condition_958;
-                break;
-            case 959:
-                stringId = R.string.condition_959;
-                break;
-            case 960:
-                stringId = R.string.condition_960;
-                break;
-            case 961:
-                stringId = R.string.condition_961;
-                break;
-            case 962:
-                stringId = R.string.condition_962;
-                break;
-            default:
-                return context.getString(R.string.condition_unknown, weatherId);
+        boolean known = weatherId >= WeatherConditions.MIN_CODE
+                && weatherId <= WeatherConditions.MAX_CODE;
+        int stringId = known ? CONDITION_STRINGS[weatherId - WeatherConditions.MIN_CODE] : 0;
+        if (stringId == 0) {
+            return context.getString(R.string.condition_unknown, weatherId);
         }
         return context.getString(stringId);
     }
@@ -534,32 +396,7 @@ public class Utility {
      * @return A string URL to an appropriate image or null if no mapping is found
      */
     public static String getImageUrlForWeatherCondition(int weatherId) {
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        if (weatherId >= 200 && weatherId <= 232) {
-            return "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
-        } else if (weatherId == 511) {
-            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
-        } else if (weatherId == 761 || weatherId == 781) {
-            return "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
-        } else if (weatherId == 800) {
-            return "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
-        } else if (weatherId == 801) {
-            return "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
-        }
-        return null;
+        return WeatherConditions.getImageUrl(weatherId);
     }
 
     /**
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.util.Arrays;
+
+/**
+ * Groups OpenWeatherMap condition codes into the handful of conditions Sunshine has artwork for.
+ *
+ * Every code from {@link #MIN_CODE} to {@link #MAX_CODE} is looked up in a table built once, so
+ * a lookup is a single array read however many codes there are.  This is plain Java on purpose,
+ * so it can be measured by the benchmark module off-device.  {@link Utility} maps the groups to
+ * resources.
+ */
+public final class WeatherConditions {
+
+    public static final int UNKNOWN = -1;
+    public static final int STORM = 0;
+    public static final int LIGHT_RAIN = 1;
+    public static final int RAIN = 2;
+    public static final int SNOW = 3;
+    public static final int FOG = 4;
+    public static final int CLEAR = 5;
+    public static final int LIGHT_CLOUDS = 6;
+    public static final int CLOUDS = 7;
+    static final int COUNT = 8;
+
+    // The range of codes OpenWeatherMap uses
+    static final int MIN_CODE = 200;
+    static final int MAX_CODE = 999;
+
+    // Names used by the art packs, indexed by condition
+    private static final String[] ART_NAMES = {
+            "storm", "light_rain", "rain", "snow", "fog", "clear", "light_clouds", "clouds"
+    };
+
+    // Photos Muzei shows for each kind of weather
+    private static final String IMAGE_STORM = "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
+    private static final String IMAGE_LIGHT_RAIN = "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
+    private static final String IMAGE_RAIN = "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+    private static final String IMAGE_SNOW = "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+    private static final String IMAGE_FOG = "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
+    private static final String IMAGE_DUST = "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+    private static final String IMAGE_CLEAR = "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
+    private static final String IMAGE_LIGHT_CLOUDS = "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
+    private static final String IMAGE_CLOUDS = "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
+
+    // Indexed by code - MIN_CODE
+    private static final byte[] CONDITIONS = new byte[MAX_CODE - MIN_CODE + 1];
+    private static final String[] IMAGE_URLS = new String[MAX_CODE - MIN_CODE + 1];
+
+    static {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        Arrays.fill(CONDITIONS, (byte) UNKNOWN);
+        put(200, 232, STORM, IMAGE_STORM);
+        put(300, 321, LIGHT_RAIN, IMAGE_LIGHT_RAIN);
+        put(500, 504, RAIN, IMAGE_RAIN);
+        put(511, 511, SNOW, IMAGE_SNOW);
+        put(520, 531, RAIN, IMAGE_RAIN);
+        put(600, 622, SNOW, IMAGE_SNOW);
+        put(701, 761, FOG, IMAGE_FOG);
+        put(781, 781, STORM, IMAGE_DUST);
+        put(800, 800, CLEAR, IMAGE_CLEAR);
+        put(801, 801, LIGHT_CLOUDS, IMAGE_LIGHT_CLOUDS);
+        put(802, 804, CLOUDS, IMAGE_CLOUDS);
+    }
+
+    private WeatherConditions() {
+    }
+
+    private static void put(int firstCode, int lastCode, int condition, String imageUrl) {
+        for (int code = firstCode; code <= lastCode; code++) {
+            CONDITIONS[code - MIN_CODE] = (byte) condition;
+            IMAGE_URLS[code - MIN_CODE] = imageUrl;
+        }
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return the condition for the code, or {@link #UNKNOWN} if no relation is found.
+     */
+    public static int getCondition(int weatherId) {
+        if (weatherId < MIN_CODE || weatherId > MAX_CODE) {
+            return UNKNOWN;
+        }
+        return CONDITIONS[weatherId - MIN_CODE];
+    }
+
+    /**
+     * @return the name an art pack uses for the condition, or null for {@link #UNKNOWN}
+     */
+    public static String getArtName(int condition) {
+        return condition == UNKNOWN ? null : ART_NAMES[condition];
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return the URL of a photo of the weather, or null if no mapping is found
+     */
+    public static String getImageUrl(int weatherId) {
+        if (weatherId < MIN_CODE || weatherId > MAX_CODE) {
+            return null;
+        }
+        return IMAGE_URLS[weatherId - MIN_CODE];
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+/**
+ * The arithmetic behind the {@link Utility} formatting helpers, without any resources.
+ *
+ * Like {@link WeatherConditions}, this is plain Java so the benchmark module can run it.
+ */
+public final class WeatherFormat {
+
+    // How getFriendlyDayString should present a day
+    public static final int DAY_STYLE_TODAY = 0;
+    public static final int DAY_STYLE_NAME = 1;
+    public static final int DAY_STYLE_DATE = 2;
+
+    // Same as android.text.format.Time.EPOCH_JULIAN_DAY
+    private static final int EPOCH_JULIAN_DAY = 2440588;
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+
+    private static final float MILES_PER_KILOMETER = .621371192237334f;
+
+    private static final String[] COMPASS_POINTS = {"N", "NE", "E", "SE", "S", "SW", "W", "NW"};
+
+    private WeatherFormat() {
+    }
+
+    /**
+     * Data is stored in Celsius.  If the user prefers to see Fahrenheit, convert it.
+     */
+    public static double toDisplayTemperature(double celsius, boolean metric) {
+        return metric ? celsius : (celsius * 1.8) + 32;
+    }
+
+    /**
+     * Data is stored in km/h.  If the user prefers to see mph, convert it.
+     */
+    public static float toDisplayWindSpeed(float kilometersPerHour, boolean metric) {
+        return metric ? kilometersPerHour : MILES_PER_KILOMETER * kilometersPerHour;
+    }
+
+    /**
+     * From wind direction in degrees, determine compass direction as a string (e.g NW)
+     *
+     * @return the compass point, or "Unknown" if the degrees are not a number
+     */
+    public static String getWindDirection(float degrees) {
+        if (degrees >= 337.5 || degrees < 22.5) {
+            return COMPASS_POINTS[0];
+        } else if (degrees >= 22.5 && degrees < 337.5) {
+            // Each point covers 45 degrees, centered on a multiple of 45.  Done in double so
+            // rounding cannot push a value just under a boundary onto the next point.
+            return COMPASS_POINTS[(int) ((degrees + 22.5) / 45)];
+        }
+        return "Unknown";
+    }
+
+    /**
+     * Same as {@link android.text.format.Time#getJulianDay(long, long)}.
+     *
+     * @param millis the time in UTC milliseconds
+     * @param gmtoff the offset from UTC of the local time zone, in seconds
+     */
+    public static int getJulianDay(long millis, long gmtoff) {
+        long offsetMillis = gmtoff * 1000;
+        long julianDay = (millis + offsetMillis) / DAY_IN_MILLIS;
+        return (int) julianDay + EPOCH_JULIAN_DAY;
+    }
+
+    /**
+     * The day string for forecast uses the following logic:
+     * For today: "Today, June 8"
+     * For the next 6 days: "Wednesday" (just the day name)
+     * For all days after that: "Mon Jun 8"
+     *
+     * @param dateInMillis the day to present
+     * @param now the current time in milliseconds
+     * @param gmtoff the offset from UTC of the local time zone, in seconds
+     * @return one of the DAY_STYLE constants
+     */
+    public static int getFriendlyDayStyle(long dateInMillis, long now, long gmtoff,
+                                          boolean displayLongToday) {
+        int julianDay = getJulianDay(dateInMillis, gmtoff);
+        int currentJulianDay = getJulianDay(now, gmtoff);
+        if (displayLongToday && julianDay == currentJulianDay) {
+            return DAY_STYLE_TODAY;
+        } else if (julianDay < currentJulianDay + 7) {
+            return DAY_STYLE_NAME;
+        }
+        return DAY_STYLE_DATE;
+    }
+}
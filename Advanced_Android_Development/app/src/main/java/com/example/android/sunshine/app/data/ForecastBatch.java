@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The days of a forecast for one location, stored column by column in primitive arrays.
+ *
+ * This is what the forecast parser fills and what {@link WeatherProvider} binds to its
+ * statements, so no day on the sync path is ever boxed into a ContentValues.  Descriptions
+ * repeat a lot, so each distinct one is only stored once.
+ */
+public final class ForecastBatch implements Parcelable {
+
+    private static final int DEFAULT_CAPACITY = 14;
+
+    // Where the forecast is for.  Only needed when the batch is stored with
+    // WeatherContract.METHOD_STORE_FORECASTS, which adds the location if it is new.
+    private String mLocationSetting;
+    private String mCityName;
+    private double mCityLatitude;
+    private double mCityLongitude;
+
+    private int mSize;
+    private long[] mDates;
+    private int[] mWeatherIds;
+    private int[] mDescriptions;
+    private double[] mMaxTemps;
+    private double[] mMinTemps;
+    private double[] mHumidity;
+    private double[] mPressure;
+    private double[] mWindSpeed;
+    private double[] mDegrees;
+
+    private final ArrayList<String> mDescriptionTable;
+    // Built lazily, since a batch that was read from a Parcel is usually never added to
+    private HashMap<String, Integer> mDescriptionIndex;
+
+    public ForecastBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ForecastBatch(int capacity) {
+        capacity = Math.max(capacity, 1);
+        mDates = new long[capacity];
+        mWeatherIds = new int[capacity];
+        mDescriptions = new int[capacity];
+        mMaxTemps = new double[capacity];
+        mMinTemps = new double[capacity];
+        mHumidity = new double[capacity];
+        mPressure = new double[capacity];
+        mWindSpeed = new double[capacity];
+        mDegrees = new double[capacity];
+        mDescriptionTable = new ArrayList<String>();
+    }
+
+    public void setLocation(String locationSetting, String cityName, double lat, double lon) {
+        mLocationSetting = locationSetting;
+        mCityName = cityName;
+        mCityLatitude = lat;
+        mCityLongitude = lon;
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    public String getCityName() {
+        return mCityName;
+    }
+
+    public double getCityLatitude() {
+        return mCityLatitude;
+    }
+
+    public double getCityLongitude() {
+        return mCityLongitude;
+    }
+
+    /**
+     * Adds a day to the end of the batch.
+     */
+    public void add(long date, int weatherId, String description, double high, double low,
+                    double humidity, double pressure, double windSpeed, double degrees) {
+        if (mSize == mDates.length) {
+            grow();
+        }
+        int i = mSize++;
+        mDates[i] = date;
+        mWeatherIds[i] = weatherId;
+        mDescriptions[i] = indexOfDescription(description);
+        mMaxTemps[i] = high;
+        mMinTemps[i] = low;
+        mHumidity[i] = humidity;
+        mPressure[i] = pressure;
+        mWindSpeed[i] = windSpeed;
+        mDegrees[i] = degrees;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public long getDate(int i) {
+        return mDates[i];
+    }
+
+    void setDate(int i, long date) {
+        mDates[i] = date;
+    }
+
+    public int getWeatherId(int i) {
+        return mWeatherIds[i];
+    }
+
+    public String getDescription(int i) {
+        return mDescriptionTable.get(mDescriptions[i]);
+    }
+
+    public double getMaxTemp(int i) {
+        return mMaxTemps[i];
+    }
+
+    public double getMinTemp(int i) {
+        return mMinTemps[i];
+    }
+
+    public double getHumidity(int i) {
+        return mHumidity[i];
+    }
+
+    public double getPressure(int i) {
+        return mPressure[i];
+    }
+
+    public double getWindSpeed(int i) {
+        return mWindSpeed[i];
+    }
+
+    public double getDegrees(int i) {
+        return mDegrees[i];
+    }
+
+    /**
+     * @return true if day i of this batch and day j of the other one hold the same values
+     */
+    boolean sameDay(int i, ForecastBatch other, int j) {
+        return mDates[i] == other.mDates[j]
+                && mWeatherIds[i] == other.mWeatherIds[j]
+                && Double.compare(mMaxTemps[i], other.mMaxTemps[j]) == 0
+                && Double.compare(mMinTemps[i], other.mMinTemps[j]) == 0
+                && Double.compare(mHumidity[i], other.mHumidity[j]) == 0
+                && Double.compare(mPressure[i], other.mPressure[j]) == 0
+                && Double.compare(mWindSpeed[i], other.mWindSpeed[j]) == 0
+                && Double.compare(mDegrees[i], other.mDegrees[j]) == 0
+                && getDescription(i).equals(other.getDescription(j));
+    }
+
+    private int indexOfDescription(String description) {
+        if (description == null) {
+            throw new IllegalArgumentException("A day needs a description");
+        }
+        if (mDescriptionIndex == null) {
+            mDescriptionIndex = new HashMap<String, Integer>();
+            for (int i = 0; i < mDescriptionTable.size(); i++) {
+                mDescriptionIndex.put(mDescriptionTable.get(i), i);
+            }
+        }
+        Integer index = mDescriptionIndex.get(description);
+        if (index == null) {
+            index = mDescriptionTable.size();
+            mDescriptionTable.add(description);
+            mDescriptionIndex.put(description, index);
+        }
+        return index;
+    }
+
+    private void grow() {
+        int capacity = mDates.length * 2;
+        mDates = Arrays.copyOf(mDates, capacity);
+        mWeatherIds = Arrays.copyOf(mWeatherIds, capacity);
+        mDescriptions = Arrays.copyOf(mDescriptions, capacity);
+        mMaxTemps = Arrays.copyOf(mMaxTemps, capacity);
+        mMinTemps = Arrays.copyOf(mMinTemps, capacity);
+        mHumidity = Arrays.copyOf(mHumidity, capacity);
+        mPressure = Arrays.copyOf(mPressure, capacity);
+        mWindSpeed = Arrays.copyOf(mWindSpeed, capacity);
+        mDegrees = Arrays.copyOf(mDegrees, capacity);
+    }
+
+    private ForecastBatch(Parcel in) {
+        mLocationSetting = in.readString();
+        mCityName = in.readString();
+        mCityLatitude = in.readDouble();
+        mCityLongitude = in.readDouble();
+        mSize = in.readInt();
+        mDates = in.createLongArray();
+        mWeatherIds = in.createIntArray();
+        mDescriptions = in.createIntArray();
+        mMaxTemps = in.createDoubleArray();
+        mMinTemps = in.createDoubleArray();
+        mHumidity = in.createDoubleArray();
+        mPressure = in.createDoubleArray();
+        mWindSpeed = in.createDoubleArray();
+        mDegrees = in.createDoubleArray();
+        mDescriptionTable = in.createStringArrayList();
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeString(mLocationSetting);
+        dest.writeString(mCityName);
+        dest.writeDouble(mCityLatitude);
+        dest.writeDouble(mCityLongitude);
+        dest.writeInt(mSize);
+        // Arrays are written trimmed to the size, so a batch read back has no spare capacity
+        dest.writeLongArray(Arrays.copyOf(mDates, Math.max(mSize, 1)));
+        dest.writeIntArray(Arrays.copyOf(mWeatherIds, Math.max(mSize, 1)));
+        dest.writeIntArray(Arrays.copyOf(mDescriptions, Math.max(mSize, 1)));
+        dest.writeDoubleArray(Arrays.copyOf(mMaxTemps, Math.max(mSize, 1)));
+        dest.writeDoubleArray(Arrays.copyOf(mMinTemps, Math.max(mSize, 1)));
+        dest.writeDoubleArray(Arrays.copyOf(mHumidity, Math.max(mSize, 1)));
+        dest.writeDoubleArray(Arrays.copyOf(mPressure, Math.max(mSize, 1)));
+        dest.writeDoubleArray(Arrays.copyOf(mWindSpeed, Math.max(mSize, 1)));
+        dest.writeDoubleArray(Arrays.copyOf(mDegrees, Math.max(mSize, 1)));
+        dest.writeStringList(mDescriptionTable);
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    public static final Parcelable.Creator<ForecastBatch> CREATOR =
+            new Parcelable.Creator<ForecastBatch>() {
+                @Override
+                public ForecastBatch createFromParcel(Parcel in) {
+                    return new ForecastBatch(in);
+                }
+
+                @Override
+                public ForecastBatch[] newArray(int size) {
+                    return new ForecastBatch[size];
+                }
+            };
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable copy of the forecast for one location, from a given day onwards.
+ *
+ * The widgets, Muzei, the watch face and the notification all want the same few columns for the
+ * preferred location right after a sync, so {@link #get(Context, String)} hands out one shared
+ * snapshot per location instead of each of them running its own query.  Snapshots are dropped
+ * whenever {@link WeatherProvider} reports a change.
+ */
+public final class ForecastSnapshot {
+
+    // Only a handful of locations are ever synced, so keeping a few around is plenty
+    private static final int MAX_LOCATIONS = 4;
+
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+    // these indices must match the projection
+    private static final int INDEX_ID = 0;
+    private static final int INDEX_DATE = 1;
+    private static final int INDEX_WEATHER_ID = 2;
+    private static final int INDEX_SHORT_DESC = 3;
+    private static final int INDEX_MAX_TEMP = 4;
+    private static final int INDEX_MIN_TEMP = 5;
+
+    private static final LruCache<String, ForecastSnapshot> sSnapshots =
+            new LruCache<String, ForecastSnapshot>(MAX_LOCATIONS);
+    // Bumped on every change, so a snapshot read before a change is never cached after it
+    private static int sGeneration;
+
+    /**
+     * The forecast for a single day.
+     */
+    public static final class Day {
+        public final long id;
+        public final long date;
+        public final int weatherId;
+        public final String description;
+        public final double high;
+        public final double low;
+
+        Day(long id, long date, int weatherId, String description, double high, double low) {
+            this.id = id;
+            this.date = date;
+            this.weatherId = weatherId;
+            this.description = description;
+            this.high = high;
+            this.low = low;
+        }
+    }
+
+    private final String mLocationSetting;
+    private final long mStartDate;
+    private final List<Day> mDays;
+
+    private ForecastSnapshot(String locationSetting, long startDate, List<Day> days) {
+        mLocationSetting = locationSetting;
+        mStartDate = startDate;
+        mDays = Collections.unmodifiableList(days);
+    }
+
+    /**
+     * Returns the forecast for the given location from today onwards, reading it from the
+     * database only if there is no current snapshot for it.
+     *
+     * @return the snapshot, or null if the forecast could not be read
+     */
+    public static ForecastSnapshot get(Context context, String locationSetting) {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        int generation;
+        synchronized (ForecastSnapshot.class) {
+            ForecastSnapshot snapshot = sSnapshots.get(locationSetting);
+            if (snapshot != null && snapshot.mStartDate == today) {
+                return snapshot;
+            }
+            generation = sGeneration;
+        }
+
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, today);
+        Cursor cursor = context.getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS,
+                null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return null;
+        }
+        List<Day> days = new ArrayList<Day>(cursor.getCount());
+        try {
+            while (cursor.moveToNext()) {
+                days.add(new Day(cursor.getLong(INDEX_ID),
+                        cursor.getLong(INDEX_DATE),
+                        cursor.getInt(INDEX_WEATHER_ID),
+                        cursor.getString(INDEX_SHORT_DESC),
+                        cursor.getDouble(INDEX_MAX_TEMP),
+                        cursor.getDouble(INDEX_MIN_TEMP)));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        ForecastSnapshot snapshot = new ForecastSnapshot(locationSetting, today, days);
+        synchronized (ForecastSnapshot.class) {
+            if (generation == sGeneration) {
+                sSnapshots.put(locationSetting, snapshot);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Drops every snapshot.  Called by {@link WeatherProvider} whenever it notifies a change.
+     */
+    static synchronized void invalidate() {
+        sGeneration++;
+        sSnapshots.evictAll();
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    /**
+     * @return the days from today onwards, in order
+     */
+    public List<Day> getDays() {
+        return mDays;
+    }
+
+    /**
+     * @return the first day of the forecast, which may be later than today, or null if empty
+     */
+    public Day getFirstDay() {
+        return mDays.isEmpty() ? null : mDays.get(0);
+    }
+
+    /**
+     * @return today's forecast, or null if it is not stored
+     */
+    public Day getToday() {
+        Day first = getFirstDay();
+        return first != null && first.date == mStartDate ? first : null;
+    }
+}
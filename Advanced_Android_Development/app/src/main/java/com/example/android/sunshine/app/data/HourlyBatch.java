@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import com.example.android.sunshine.app.data.WeatherContract.HourlyEntry;
+
+import java.util.Arrays;
+
+/**
+ * The three hour steps of a forecast for one location, already packed into the integers the
+ * hourly table stores, column by column.
+ *
+ * Like {@link ForecastBatch}, this is what the parser fills and what {@link WeatherProvider}
+ * binds to its statements, so nothing is boxed on the way from the response to the database.
+ */
+public final class HourlyBatch implements Parcelable {
+
+    // Five days of three hour steps, which is what OWM sends
+    private static final int DEFAULT_CAPACITY = 40;
+
+    // Where the forecast is for, in case the location has to be added
+    private String mLocationSetting;
+    private String mCityName;
+    private double mCityLatitude;
+    private double mCityLongitude;
+
+    private int mSize;
+    private long[] mTimes;
+    private int[] mTemperatures;
+    private int[] mWeather;
+    private int[] mWind;
+
+    public HourlyBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public HourlyBatch(int capacity) {
+        capacity = Math.max(capacity, 1);
+        mTimes = new long[capacity];
+        mTemperatures = new int[capacity];
+        mWeather = new int[capacity];
+        mWind = new int[capacity];
+    }
+
+    public void setLocation(String locationSetting, String cityName, double lat, double lon) {
+        mLocationSetting = locationSetting;
+        mCityName = cityName;
+        mCityLatitude = lat;
+        mCityLongitude = lon;
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    public String getCityName() {
+        return mCityName;
+    }
+
+    public double getCityLatitude() {
+        return mCityLatitude;
+    }
+
+    public double getCityLongitude() {
+        return mCityLongitude;
+    }
+
+    /**
+     * Adds a step to the end of the batch.  Steps must be added in ascending order of time.
+     *
+     * @param time start of the step, in seconds since the epoch
+     * @param temperature in degrees Celsius
+     * @param windSpeed in meters per second
+     */
+    public void add(long time, double temperature, int weatherId, double humidity,
+                    double windSpeed, double degrees) {
+        if (mSize > 0 && time <= mTimes[mSize - 1]) {
+            throw new IllegalArgumentException("Steps must be added in order of time");
+        }
+        if (mSize == mTimes.length) {
+            grow();
+        }
+        int i = mSize++;
+        mTimes[i] = time;
+        mTemperatures[i] = HourlyEntry.toStoredTemperature(temperature);
+        mWeather[i] = HourlyEntry.packWeather(weatherId, humidity);
+        mWind[i] = HourlyEntry.packWind(windSpeed, degrees);
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * @return the start of step i, in seconds since the epoch
+     */
+    public long getTime(int i) {
+        return mTimes[i];
+    }
+
+    /**
+     * @return the temperature of step i, as stored in {@link HourlyEntry#COLUMN_TEMP}
+     */
+    public int getTemperature(int i) {
+        return mTemperatures[i];
+    }
+
+    /**
+     * @return the condition of step i, as stored in {@link HourlyEntry#COLUMN_WEATHER}
+     */
+    public int getWeather(int i) {
+        return mWeather[i];
+    }
+
+    /**
+     * @return the wind of step i, as stored in {@link HourlyEntry#COLUMN_WIND}
+     */
+    public int getWind(int i) {
+        return mWind[i];
+    }
+
+    private void grow() {
+        int capacity = mTimes.length * 2;
+        mTimes = Arrays.copyOf(mTimes, capacity);
+        mTemperatures = Arrays.copyOf(mTemperatures, capacity);
+        mWeather = Arrays.copyOf(mWeather, capacity);
+        mWind = Arrays.copyOf(mWind, capacity);
+    }
+
+    private HourlyBatch(Parcel in) {
+        mLocationSetting = in.readString();
+        mCityName = in.readString();
+        mCityLatitude = in.readDouble();
+        mCityLongitude = in.readDouble();
+        mSize = in.readInt();
+        mTimes = in.createLongArray();
+        mTemperatures = in.createIntArray();
+        mWeather = in.createIntArray();
+        mWind = in.createIntArray();
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeString(mLocationSetting);
+        dest.writeString(mCityName);
+        dest.writeDouble(mCityLatitude);
+        dest.writeDouble(mCityLongitude);
+        dest.writeInt(mSize);
+        // Arrays are written trimmed to the size, so a batch read back has no spare capacity
+        dest.writeLongArray(Arrays.copyOf(mTimes, Math.max(mSize, 1)));
+        dest.writeIntArray(Arrays.copyOf(mTemperatures, Math.max(mSize, 1)));
+        dest.writeIntArray(Arrays.copyOf(mWeather, Math.max(mSize, 1)));
+        dest.writeIntArray(Arrays.copyOf(mWind, Math.max(mSize, 1)));
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    public static final Parcelable.Creator<HourlyBatch> CREATOR =
+            new Parcelable.Creator<HourlyBatch>() {
+                @Override
+                public HourlyBatch createFromParcel(Parcel in) {
+                    return new HourlyBatch(in);
+                }
+
+                @Override
+                public HourlyBatch[] newArray(int size) {
+                    return new HourlyBatch[size];
+                }
+            };
+}
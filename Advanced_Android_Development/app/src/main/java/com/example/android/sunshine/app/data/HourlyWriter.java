@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.sunshine.app.data.WeatherContract.HourlyEntry;
+
+/**
+ * Replaces the hourly forecast of a location with a newer one.
+ *
+ * Steps the new forecast no longer covers are deleted with one statement.  The steps still
+ * stored are read in one go, and only those the new forecast has different values for, or adds,
+ * are written, so a forecast that has not changed writes nothing.  The table is keyed by location
+ * and time, so the read is a single range of it and each write a single seek.  The statements
+ * are compiled once and reused for every step and location, so {@link #close()} must be called
+ * when done.
+ */
+class HourlyWriter {
+
+    private static final String[] STEP_COLUMNS = {
+            HourlyEntry.COLUMN_TIME,
+            HourlyEntry.COLUMN_TEMP,
+            HourlyEntry.COLUMN_WEATHER,
+            HourlyEntry.COLUMN_WIND
+    };
+    private static final int COL_TIME = 0;
+    private static final int COL_TEMP = 1;
+    private static final int COL_WEATHER = 2;
+    private static final int COL_WIND = 3;
+
+    private final SQLiteDatabase mDb;
+    private SQLiteStatement mPruneStatement;
+    private SQLiteStatement mInsertStatement;
+
+    HourlyWriter(SQLiteDatabase db) {
+        mDb = db;
+    }
+
+    /**
+     * Writes the batch as the location's hourly forecast.  Call it within a transaction, so
+     * observers never see half of one forecast and half of another.
+     *
+     * @return the number of rows deleted or written, 0 if the location's hourly forecast is
+     * unchanged
+     */
+    int write(long locationId, HourlyBatch batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        if (mPruneStatement == null) {
+            mPruneStatement = mDb.compileStatement("DELETE FROM " + HourlyEntry.TABLE_NAME +
+                    " WHERE " + HourlyEntry.COLUMN_LOC_KEY + " = ? AND (" +
+                    HourlyEntry.COLUMN_TIME + " < ? OR " + HourlyEntry.COLUMN_TIME + " > ?)");
+            mInsertStatement = mDb.compileStatement("INSERT OR REPLACE INTO " +
+                    HourlyEntry.TABLE_NAME + " (" +
+                    HourlyEntry.COLUMN_LOC_KEY + ", " +
+                    HourlyEntry.COLUMN_TIME + ", " +
+                    HourlyEntry.COLUMN_TEMP + ", " +
+                    HourlyEntry.COLUMN_WEATHER + ", " +
+                    HourlyEntry.COLUMN_WIND + ") VALUES (?, ?, ?, ?, ?)");
+        }
+
+        mPruneStatement.bindLong(1, locationId);
+        mPruneStatement.bindLong(2, batch.getTime(0));
+        mPruneStatement.bindLong(3, batch.getTime(batch.size() - 1));
+        int changed = mPruneStatement.executeUpdateDelete();
+
+        boolean[] unchanged = findUnchanged(locationId, batch);
+        mInsertStatement.bindLong(1, locationId);
+        for (int i = 0; i < batch.size(); i++) {
+            if (unchanged[i]) {
+                continue;
+            }
+            mInsertStatement.bindLong(2, batch.getTime(i));
+            mInsertStatement.bindLong(3, batch.getTemperature(i));
+            mInsertStatement.bindLong(4, batch.getWeather(i));
+            mInsertStatement.bindLong(5, batch.getWind(i));
+            // The table has no row IDs, so there is no point in executeInsert()
+            mInsertStatement.execute();
+            changed++;
+        }
+        return changed;
+    }
+
+    /**
+     * @return for each step of the batch, whether the same values are already stored for it
+     */
+    private boolean[] findUnchanged(long locationId, HourlyBatch batch) {
+        boolean[] unchanged = new boolean[batch.size()];
+        Cursor cursor = mDb.query(HourlyEntry.TABLE_NAME, STEP_COLUMNS,
+                HourlyEntry.COLUMN_LOC_KEY + " = ?",
+                new String[]{Long.toString(locationId)},
+                null, null, HourlyEntry.COLUMN_TIME + " ASC");
+        try {
+            // Both are in time order, so one pass over each matches them up
+            int i = 0;
+            while (cursor.moveToNext() && i < batch.size()) {
+                long time = cursor.getLong(COL_TIME);
+                while (i < batch.size() && batch.getTime(i) < time) {
+                    i++;
+                }
+                if (i < batch.size() && batch.getTime(i) == time) {
+                    unchanged[i] = cursor.getInt(COL_TEMP) == batch.getTemperature(i)
+                            && cursor.getInt(COL_WEATHER) == batch.getWeather(i)
+                            && cursor.getInt(COL_WIND) == batch.getWind(i);
+                    i++;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return unchanged;
+    }
+
+    void close() {
+        if (mPruneStatement != null) {
+            mPruneStatement.close();
+            mInsertStatement.close();
+            mPruneStatement = null;
+            mInsertStatement = null;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tells observers about committed changes to the weather, hourly and location tables.
+ *
+ * Notifications are held for {@link #DEBOUNCE_MS}, so changes committed in quick succession
+ * reach each observer once, and a URI already covered by a pending parent is not sent at all.
+ * The shared {@link ForecastSnapshot}s are dropped right away, so nobody reads a stale one while
+ * the notification is pending.
+ */
+class WeatherChangeNotifier {
+
+    // How long changes are collected before observers are told
+    static final long DEBOUNCE_MS = 100;
+
+    private final ContentResolver mResolver;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    // Guarded by this
+    private final Set<Uri> mPending = new LinkedHashSet<Uri>();
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    WeatherChangeNotifier(ContentResolver resolver) {
+        mResolver = resolver;
+    }
+
+    /**
+     * Reports a change to everything under the given URI.  Must only be called once the change
+     * has been committed.
+     */
+    void notifyChange(Uri uri) {
+        // Drop the shared snapshots before anyone who is told about the change can read them.
+        // They only hold days, so the hourly forecast changing leaves them be.
+        List<String> segments = uri.getPathSegments();
+        if (segments.isEmpty() || !WeatherContract.PATH_HOURLY.equals(segments.get(0))) {
+            ForecastSnapshot.invalidate();
+        }
+        synchronized (this) {
+            if (mPending.isEmpty()) {
+                mHandler.postDelayed(mFlush, DEBOUNCE_MS);
+            }
+            mPending.add(uri);
+        }
+    }
+
+    private void flush() {
+        List<Uri> uris;
+        synchronized (this) {
+            uris = new ArrayList<Uri>(mPending);
+            mPending.clear();
+        }
+        for (Uri uri : uris) {
+            if (!hasAncestorIn(uris, uri)) {
+                mResolver.notifyChange(uri, null);
+            }
+        }
+    }
+
+    /**
+     * @return true if one of the URIs is a parent of the given one, and so already covers it
+     */
+    private static boolean hasAncestorIn(List<Uri> uris, Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        for (Uri other : uris) {
+            List<String> otherSegments = other.getPathSegments();
+            if (otherSegments.size() < segments.size()
+                    && other.getAuthority().equals(uri.getAuthority())
+                    && otherSegments.equals(segments.subList(0, otherSegments.size()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
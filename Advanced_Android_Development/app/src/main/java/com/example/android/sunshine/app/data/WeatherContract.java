@@ -19,7 +19,8 @@ import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
-import android.text.format.Time;
+
+import java.util.TimeZone;
 
 /**
  * Defines table and column names for the weather database.
@@ -43,15 +44,48 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_HISTORY = "history";
+    public static final String PATH_HOURLY = "hourly";
+
+    // Method for ContentResolver.call() that stores whole forecasts at once.  The extras hold an
+    // ArrayList of ForecastBatch under EXTRA_FORECASTS, one per location, and optionally a date
+    // under EXTRA_DELETE_BEFORE; weather dated before it is moved into the history in the same
+    // transaction.  EXTRA_HISTORY_MONTHS optionally says how many months of history to keep,
+    // DEFAULT_HISTORY_MONTHS if absent; older months are dropped.  An ArrayList of HourlyBatch
+    // under EXTRA_HOURLY_FORECASTS optionally replaces the hourly forecasts of their locations.
+    // The result holds the number of weather rows now stored under EXTRA_ROWS_STORED, and the
+    // number of hourly rows under EXTRA_HOURS_STORED.  It also holds how many milliseconds were
+    // spent finding and adding locations (EXTRA_LOCATION_MILLIS), writing the weather
+    // (EXTRA_WEATHER_MILLIS) and the hourly forecasts (EXTRA_HOURLY_MILLIS), and moving and
+    // dropping history (EXTRA_HISTORY_MILLIS).
+    public static final String METHOD_STORE_FORECASTS = "store_forecasts";
+    public static final String EXTRA_FORECASTS = "forecasts";
+    public static final String EXTRA_HOURLY_FORECASTS = "hourly_forecasts";
+    public static final String EXTRA_DELETE_BEFORE = "delete_before";
+    public static final String EXTRA_HISTORY_MONTHS = "history_months";
+    public static final String EXTRA_ROWS_STORED = "rows_stored";
+    public static final String EXTRA_HOURS_STORED = "hours_stored";
+    public static final String EXTRA_LOCATION_MILLIS = "location_millis";
+    public static final String EXTRA_WEATHER_MILLIS = "weather_millis";
+    public static final String EXTRA_HOURLY_MILLIS = "hourly_millis";
+    public static final String EXTRA_HISTORY_MILLIS = "history_millis";
+
+    public static final int DEFAULT_HISTORY_MONTHS = 3;
+
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
     public static long normalizeDate(long startDate) {
-        // normalize the start date to the beginning of the (UTC) day
-        Time time = new Time();
-        time.set(startDate);
-        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
-        return time.setJulianDay(julianDay);
+        // normalize the start date to the beginning of the (UTC) day.  This is what
+        // Time.setJulianDay(Time.getJulianDay(...)) does, done with java.util.TimeZone so it
+        // costs no Time objects and runs off-device.
+        TimeZone zone = TimeZone.getDefault();
+        int offset = zone.getOffset(startDate);
+        long localDay = (startDate + offset) / DAY_IN_MILLIS;
+        long localMidnight = localDay * DAY_IN_MILLIS;
+        // The offset at midnight differs from the one at startDate on days DST changes
+        return localMidnight - zone.getOffset(localMidnight - offset);
     }
 
     /* Inner class that defines the table contents of the location table */
@@ -126,6 +160,9 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // Query parameter for the last day of a history query, the first being under COLUMN_DATE
+        private static final String PARAM_END_DATE = "end_date";
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -149,6 +186,18 @@ public class WeatherContract {
                     .appendPath(Long.toString(normalizeDate(date))).build();
         }
 
+        /**
+         * Builds the URI for the weather of a location between two dates, inclusive, including
+         * days that are over and only kept in the history.
+         */
+        public static Uri buildWeatherHistory(String locationSetting, long startDate,
+                                              long endDate) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).appendPath(PATH_HISTORY)
+                    .appendQueryParameter(COLUMN_DATE, Long.toString(normalizeDate(startDate)))
+                    .appendQueryParameter(PARAM_END_DATE, Long.toString(normalizeDate(endDate)))
+                    .build();
+        }
+
         public static String getLocationSettingFromUri(Uri uri) {
             return uri.getPathSegments().get(1);
         }
@@ -164,5 +213,152 @@ public class WeatherContract {
             else
                 return 0;
         }
+
+        public static long getEndDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_END_DATE);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Inner class that defines the table contents of the hourly table, which holds the forecast
+     * in three hour steps.
+     *
+     * There are eight times as many of these as there are days, so each is kept small: the table
+     * is keyed by location and time alone, with no _id, and every value is an integer.
+     * Temperatures are scaled, and the condition and wind are each packed into a single column;
+     * use the methods of this class to get the values back.
+     */
+    public static final class HourlyEntry {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_HOURLY).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_HOURLY;
+
+        public static final String TABLE_NAME = "hourly";
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // Start of the three hours, stored as seconds since the epoch, as OWM sends it
+        public static final String COLUMN_TIME = "time";
+        // Temperature, stored in tenths of a degree Celsius
+        public static final String COLUMN_TEMP = "temp";
+        // Weather id as returned by API, and humidity in percent, packed by packWeather()
+        public static final String COLUMN_WEATHER = "weather";
+        // Wind speed and direction, packed by packWind()
+        public static final String COLUMN_WIND = "wind";
+
+        // Query parameters for the range of times, in seconds, the last one excluded
+        private static final String PARAM_START = "start";
+        private static final String PARAM_END = "end";
+
+        private static final int TEMPERATURE_SCALE = 10;
+        private static final int WEATHER_ID_BITS = 10;
+        private static final int WEATHER_ID_MASK = (1 << WEATHER_ID_BITS) - 1;
+        private static final int WIND_SPEED_BITS = 12;
+        private static final int WIND_SPEED_MASK = (1 << WIND_SPEED_BITS) - 1;
+        private static final int WIND_SPEED_SCALE = 10;
+
+        public static Uri buildHourlyLocation(String locationSetting) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+        }
+
+        /**
+         * Builds the URI for the hourly forecast of a location from one time up to, but not
+         * including, another, both in milliseconds.
+         */
+        public static Uri buildHourlyLocationWithRange(String locationSetting, long startMillis,
+                                                       long endMillis) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(PARAM_START, Long.toString(startMillis / 1000))
+                    .appendQueryParameter(PARAM_END, Long.toString(endMillis / 1000))
+                    .build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        /**
+         * @return the first time of the range, in seconds, or 0 if there is none
+         */
+        public static long getStartTimeFromUri(Uri uri) {
+            String time = uri.getQueryParameter(PARAM_START);
+            return time != null && time.length() > 0 ? Long.parseLong(time) : 0;
+        }
+
+        /**
+         * @return the time the range ends before, in seconds, or Long.MAX_VALUE if it doesn't
+         */
+        public static long getEndTimeFromUri(Uri uri) {
+            String time = uri.getQueryParameter(PARAM_END);
+            return time != null && time.length() > 0 ? Long.parseLong(time) : Long.MAX_VALUE;
+        }
+
+        public static int toStoredTemperature(double celsius) {
+            return (int) Math.round(celsius * TEMPERATURE_SCALE);
+        }
+
+        /**
+         * @return the temperature of a COLUMN_TEMP value, in degrees Celsius
+         */
+        public static double getTemperature(int temp) {
+            return (double) temp / TEMPERATURE_SCALE;
+        }
+
+        /**
+         * Packs a weather id and humidity into a COLUMN_WEATHER value.  Ids OWM doesn't use are
+         * stored as 0, which no condition maps to.
+         */
+        public static int packWeather(int weatherId, double humidity) {
+            if (weatherId < 0 || weatherId > WEATHER_ID_MASK) {
+                weatherId = 0;
+            }
+            int percent = (int) Math.round(Math.max(0, Math.min(100, humidity)));
+            return weatherId | percent << WEATHER_ID_BITS;
+        }
+
+        public static int getWeatherId(int weather) {
+            return weather & WEATHER_ID_MASK;
+        }
+
+        /**
+         * @return the humidity of a COLUMN_WEATHER value, in percent
+         */
+        public static int getHumidity(int weather) {
+            return weather >>> WEATHER_ID_BITS;
+        }
+
+        /**
+         * Packs a wind speed in meters per second, to a tenth and at most 409.5, and a direction
+         * in whole meteorological degrees into a COLUMN_WIND value.
+         */
+        public static int packWind(double speed, double degrees) {
+            int tenths = (int) Math.round(Math.max(0, speed * WIND_SPEED_SCALE));
+            int direction = (int) Math.round(degrees) % 360;
+            if (direction < 0) {
+                direction += 360;
+            }
+            return Math.min(tenths, WIND_SPEED_MASK) | direction << WIND_SPEED_BITS;
+        }
+
+        /**
+         * @return the wind speed of a COLUMN_WIND value, in meters per second
+         */
+        public static float getWindSpeed(int wind) {
+            return (float) (wind & WIND_SPEED_MASK) / WIND_SPEED_SCALE;
+        }
+
+        /**
+         * @return the wind direction of a COLUMN_WIND value, in meteorological degrees
+         */
+        public static float getWindDirection(int wind) {
+            return wind >>> WIND_SPEED_BITS;
+        }
     }
 }
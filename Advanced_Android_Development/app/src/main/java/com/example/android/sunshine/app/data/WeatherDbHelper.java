@@ -19,6 +19,7 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import com.example.android.sunshine.app.data.WeatherContract.HourlyEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
@@ -28,16 +29,41 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    // Add a step to migrate() for every new version, so stored data survives the upgrade.
+    private static final int DATABASE_VERSION = 4;
+
+    // Databases older than this are simply discarded and created again
+    static final int OLDEST_MIGRATABLE_VERSION = 2;
+
+    // Lets the provider look weather up by location and date range without scanning the table
+    static final String WEATHER_LOCATION_DATE_INDEX = "weather_location_date_idx";
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Bumped whenever the tables are created or migrated, so cached statements are rebuilt
+    private volatile int mSchemaGeneration;
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
 
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // The sync adapter writes while the UI, widgets and watch face read, so let them overlap
+        db.enableWriteAheadLogging();
+    }
+
     @Override
     public void onCreate(SQLiteDatabase sqLiteDatabase) {
+        createVersion2Tables(sqLiteDatabase);
+        migrate(sqLiteDatabase, OLDEST_MIGRATABLE_VERSION, DATABASE_VERSION);
+        mSchemaGeneration++;
+    }
+
+    /**
+     * Creates the tables as they were in version 2, which every migration starts from.
+     */
+    static void createVersion2Tables(SQLiteDatabase sqLiteDatabase) {
         // Create a table to hold locations.  A location consists of the string supplied in the
         // location setting, the city name, and the latitude and longitude
         final String SQL_CREATE_LOCATION_TABLE = "CREATE TABLE " + LocationEntry.TABLE_NAME + " (" +
@@ -83,16 +109,74 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
     }
 
+    /**
+     * Brings the schema from one version to another one step at a time, keeping the data.
+     */
+    static void migrate(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            switch (version) {
+                case 3:
+                    upgradeToVersion3(sqLiteDatabase);
+                    break;
+                case 4:
+                    upgradeToVersion4(sqLiteDatabase);
+                    break;
+                default:
+                    throw new IllegalStateException("No migration to version " + version);
+            }
+        }
+    }
+
+    private static void upgradeToVersion3(SQLiteDatabase sqLiteDatabase) {
+        // The unique index on (date, location_id) can't serve "location_id = ? AND date >= ?",
+        // which is what every forecast query boils down to once the location is joined in.
+        // Location settings are already indexed by their UNIQUE constraint.
+        sqLiteDatabase.execSQL("CREATE INDEX IF NOT EXISTS " + WEATHER_LOCATION_DATE_INDEX +
+                " ON " + WeatherEntry.TABLE_NAME + " (" +
+                WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE + ");");
+
+        // Give the query planner statistics to choose between the indexes with
+        sqLiteDatabase.execSQL("ANALYZE;");
+    }
+
+    private static void upgradeToVersion4(SQLiteDatabase sqLiteDatabase) {
+        // The forecast in three hour steps.  The primary key is what every query and write looks
+        // rows up by, so the table is stored in that order and needs no other index, nor row IDs.
+        sqLiteDatabase.execSQL("CREATE TABLE " + HourlyEntry.TABLE_NAME + " (" +
+                HourlyEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                HourlyEntry.COLUMN_TIME + " INTEGER NOT NULL, " +
+                HourlyEntry.COLUMN_TEMP + " INTEGER NOT NULL, " +
+                HourlyEntry.COLUMN_WEATHER + " INTEGER NOT NULL, " +
+                HourlyEntry.COLUMN_WIND + " INTEGER NOT NULL, " +
+
+                " PRIMARY KEY (" + HourlyEntry.COLUMN_LOC_KEY + ", " +
+                HourlyEntry.COLUMN_TIME + "), " +
+
+                " FOREIGN KEY (" + HourlyEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + ")" +
+                ") WITHOUT ROWID;");
+    }
+
+    /**
+     * @return a number that changes every time the schema of the database is created
+     */
+    int getSchemaGeneration() {
+        return mSchemaGeneration;
+    }
+
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
         // Note that this only fires if you change the version number for your database.
         // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        if (oldVersion < OLDEST_MIGRATABLE_VERSION) {
+            // This database is only a cache for online data, so anything too old to migrate
+            // is simply discarded and we start over
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+        migrate(sqLiteDatabase, oldVersion, newVersion);
+        mSchemaGeneration++;
     }
 }
@@ -0,0 +1,388 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Writes weather rows by comparing them against what is already stored for the same location
+ * and date.  Rows that are identical are skipped, rows that differ are updated in place and only
+ * rows that are missing are inserted.
+ *
+ * Unlike relying on the table's ON CONFLICT REPLACE, this keeps the _id of existing rows and
+ * lets the caller tell whether anything changed at all.  The insert and update statements are
+ * compiled once and reused for every row, so {@link #close()} must be called when done.
+ * Rows are written from a {@link ForecastBatch}, whose columns are bound straight to the
+ * statements.  Dates are expected to be normalized already.
+ */
+class WeatherDiffWriter {
+
+    /**
+     * What a write did.  Observers only need to hear about it when {@link #hasChanges()}.
+     */
+    static class ChangeSet {
+        int inserted;
+        int updated;
+        int unchanged;
+        // The dates that were inserted or updated, by location _id
+        final Map<Long, Set<Long>> changedDays = new HashMap<Long, Set<Long>>();
+
+        private void addChangedDay(long locationId, long date) {
+            Set<Long> dates = changedDays.get(locationId);
+            if (dates == null) {
+                dates = new TreeSet<Long>();
+                changedDays.put(locationId, dates);
+            }
+            dates.add(date);
+        }
+
+        boolean hasChanges() {
+            return inserted > 0 || updated > 0;
+        }
+
+        /**
+         * @return the number of rows that now hold the values that were written
+         */
+        int stored() {
+            return inserted + updated + unchanged;
+        }
+    }
+
+    // Every column a weather row is written with, in the order they are bound
+    private static final String[] COLUMNS = {
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    // The stored rows are read back with the location swapped for the _id
+    private static final String[] STORED_PROJECTION;
+    private static final int STORED_ID = 0;
+    private static final int STORED_DATE = 1;
+    private static final int STORED_SHORT_DESC = 2;
+    private static final int STORED_WEATHER_ID = 3;
+    private static final int STORED_MIN_TEMP = 4;
+    private static final int STORED_MAX_TEMP = 5;
+    private static final int STORED_HUMIDITY = 6;
+    private static final int STORED_PRESSURE = 7;
+    private static final int STORED_WIND_SPEED = 8;
+    private static final int STORED_DEGREES = 9;
+
+    static {
+        STORED_PROJECTION = COLUMNS.clone();
+        STORED_PROJECTION[STORED_ID] = WeatherEntry._ID;
+    }
+
+    //weather.location_id = ? AND date >= ? AND date <= ?
+    private static final String sLocationAndDateRangeSelection =
+            WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherEntry.COLUMN_DATE + " >= ? AND " +
+                    WeatherEntry.COLUMN_DATE + " <= ? ";
+
+    private final SQLiteDatabase mDb;
+    private SQLiteStatement mInsertStatement;
+    private SQLiteStatement mUpdateStatement;
+
+    WeatherDiffWriter(SQLiteDatabase db) {
+        mDb = db;
+    }
+
+    /**
+     * Writes a single row.
+     *
+     * @return the _id of the row holding the values
+     */
+    long write(ContentValues values, ChangeSet changes) {
+        Long locationId = values.getAsLong(WeatherEntry.COLUMN_LOC_KEY);
+        ForecastBatch batch = new ForecastBatch(1);
+        if (locationId == null || !addRow(batch, values)) {
+            throw new android.database.SQLException("Failed to insert row " + values);
+        }
+        long[] ids = new long[1];
+        write(locationId, batch, ids, changes);
+        return ids[0];
+    }
+
+    /**
+     * Writes all of the rows, loading what is stored with one query per location.  Rows that
+     * lack a column could never be stored and are left out, just like a failed insert.
+     */
+    ChangeSet write(ContentValues[] values) {
+        // Group the rows by location, so the stored rows for each can be loaded in one go
+        Map<Long, ForecastBatch> batches = new HashMap<Long, ForecastBatch>();
+        for (ContentValues value : values) {
+            Long locationId = value.getAsLong(WeatherEntry.COLUMN_LOC_KEY);
+            if (locationId == null) {
+                continue;
+            }
+            ForecastBatch batch = batches.get(locationId);
+            if (batch == null) {
+                batch = new ForecastBatch(values.length);
+                batches.put(locationId, batch);
+            }
+            addRow(batch, value);
+        }
+
+        ChangeSet changes = new ChangeSet();
+        for (Map.Entry<Long, ForecastBatch> entry : batches.entrySet()) {
+            write(entry.getKey(), entry.getValue(), null, changes);
+        }
+        return changes;
+    }
+
+    /**
+     * Writes all of the days in the batch for the given location.
+     */
+    void write(long locationId, ForecastBatch batch, ChangeSet changes) {
+        write(locationId, batch, null, changes);
+    }
+
+    void close() {
+        if (mInsertStatement != null) {
+            mInsertStatement.close();
+            mInsertStatement = null;
+        }
+        if (mUpdateStatement != null) {
+            mUpdateStatement.close();
+            mUpdateStatement = null;
+        }
+    }
+
+    /**
+     * @param ids if not null, receives the _id of the row holding each day
+     */
+    private void write(long locationId, ForecastBatch batch, long[] ids, ChangeSet changes) {
+        int size = batch.size();
+        if (size == 0) {
+            return;
+        }
+        long minDate = Long.MAX_VALUE;
+        long maxDate = Long.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            minDate = Math.min(minDate, batch.getDate(i));
+            maxDate = Math.max(maxDate, batch.getDate(i));
+        }
+
+        StoredRows stored = loadStoredRows(locationId, minDate, maxDate);
+        boolean hasDuplicateDates = hasDuplicateDates(batch);
+
+        for (int i = 0; i < size; i++) {
+            if (hasDuplicateDates && isOverwrittenLater(batch, i)) {
+                // The last row for a day wins, as it would with ON CONFLICT REPLACE
+                continue;
+            }
+            int j = Arrays.binarySearch(stored.dates, batch.getDate(i));
+            long _id;
+            if (j < 0) {
+                SQLiteStatement insert = getInsertStatement();
+                bindColumns(insert, locationId, batch, i);
+                _id = insert.executeInsert();
+                if (_id == -1) {
+                    throw new android.database.SQLException("Failed to insert row into "
+                            + WeatherEntry.TABLE_NAME);
+                }
+                changes.inserted++;
+                changes.addChangedDay(locationId, batch.getDate(i));
+            } else if (batch.sameDay(i, stored.days, j)) {
+                _id = stored.ids[j];
+                changes.unchanged++;
+            } else {
+                _id = stored.ids[j];
+                SQLiteStatement update = getUpdateStatement();
+                bindColumns(update, locationId, batch, i);
+                update.bindLong(COLUMNS.length + 1, _id);
+                update.executeUpdateDelete();
+                changes.updated++;
+                changes.addChangedDay(locationId, batch.getDate(i));
+            }
+            if (ids != null) {
+                ids[i] = _id;
+            }
+        }
+    }
+
+    /**
+     * Loads the stored rows for the location between the two dates, in date order.
+     */
+    private StoredRows loadStoredRows(long locationId, long minDate, long maxDate) {
+        Cursor cursor = mDb.query(WeatherEntry.TABLE_NAME,
+                STORED_PROJECTION,
+                sLocationAndDateRangeSelection,
+                new String[]{Long.toString(locationId), Long.toString(minDate),
+                        Long.toString(maxDate)},
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        try {
+            StoredRows stored = new StoredRows(cursor.getCount());
+            for (int j = 0; cursor.moveToNext(); j++) {
+                stored.ids[j] = cursor.getLong(STORED_ID);
+                stored.dates[j] = cursor.getLong(STORED_DATE);
+                stored.days.add(stored.dates[j],
+                        cursor.getInt(STORED_WEATHER_ID),
+                        cursor.getString(STORED_SHORT_DESC),
+                        cursor.getDouble(STORED_MAX_TEMP),
+                        cursor.getDouble(STORED_MIN_TEMP),
+                        cursor.getDouble(STORED_HUMIDITY),
+                        cursor.getDouble(STORED_PRESSURE),
+                        cursor.getDouble(STORED_WIND_SPEED),
+                        cursor.getDouble(STORED_DEGREES));
+            }
+            return stored;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Adds a row given as ContentValues to the batch.
+     *
+     * @return false if the row lacks a column and was not added
+     */
+    private static boolean addRow(ForecastBatch batch, ContentValues values) {
+        Long date = values.getAsLong(WeatherEntry.COLUMN_DATE);
+        Integer weatherId = values.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID);
+        String description = values.getAsString(WeatherEntry.COLUMN_SHORT_DESC);
+        Double high = values.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP);
+        Double low = values.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP);
+        Double humidity = values.getAsDouble(WeatherEntry.COLUMN_HUMIDITY);
+        Double pressure = values.getAsDouble(WeatherEntry.COLUMN_PRESSURE);
+        Double windSpeed = values.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED);
+        Double degrees = values.getAsDouble(WeatherEntry.COLUMN_DEGREES);
+        if (date == null || weatherId == null || description == null || high == null
+                || low == null || humidity == null || pressure == null || windSpeed == null
+                || degrees == null) {
+            return false;
+        }
+        batch.add(date, weatherId, description, high, low, humidity, pressure, windSpeed,
+                degrees);
+        return true;
+    }
+
+    private static boolean hasDuplicateDates(ForecastBatch batch) {
+        // Forecasts come in date order, so this is nearly always decided without sorting
+        long previous = Long.MIN_VALUE;
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.getDate(i) <= previous) {
+                long[] dates = new long[batch.size()];
+                for (int k = 0; k < dates.length; k++) {
+                    dates[k] = batch.getDate(k);
+                }
+                Arrays.sort(dates);
+                for (int k = 1; k < dates.length; k++) {
+                    if (dates[k] == dates[k - 1]) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            previous = batch.getDate(i);
+        }
+        return false;
+    }
+
+    private static boolean isOverwrittenLater(ForecastBatch batch, int i) {
+        for (int k = i + 1; k < batch.size(); k++) {
+            if (batch.getDate(k) == batch.getDate(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void bindColumns(SQLiteStatement statement, long locationId,
+                                    ForecastBatch batch, int i) {
+        // indices are 1-based and follow COLUMNS
+        statement.bindLong(1, locationId);
+        statement.bindLong(2, batch.getDate(i));
+        statement.bindString(3, batch.getDescription(i));
+        statement.bindLong(4, batch.getWeatherId(i));
+        statement.bindDouble(5, batch.getMinTemp(i));
+        statement.bindDouble(6, batch.getMaxTemp(i));
+        statement.bindDouble(7, batch.getHumidity(i));
+        statement.bindDouble(8, batch.getPressure(i));
+        statement.bindDouble(9, batch.getWindSpeed(i));
+        statement.bindDouble(10, batch.getDegrees(i));
+    }
+
+    private SQLiteStatement getInsertStatement() {
+        if (mInsertStatement == null) {
+            StringBuilder sql = new StringBuilder("INSERT INTO ")
+                    .append(WeatherEntry.TABLE_NAME).append(" (");
+            StringBuilder params = new StringBuilder();
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (i > 0) {
+                    sql.append(", ");
+                    params.append(", ");
+                }
+                sql.append(COLUMNS[i]);
+                params.append('?');
+            }
+            sql.append(") VALUES (").append(params).append(')');
+            mInsertStatement = mDb.compileStatement(sql.toString());
+        }
+        return mInsertStatement;
+    }
+
+    private SQLiteStatement getUpdateStatement() {
+        if (mUpdateStatement == null) {
+            StringBuilder sql = new StringBuilder("UPDATE ")
+                    .append(WeatherEntry.TABLE_NAME).append(" SET ");
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                sql.append(COLUMNS[i]).append(" = ?");
+            }
+            sql.append(" WHERE ").append(WeatherEntry._ID).append(" = ?");
+            mUpdateStatement = mDb.compileStatement(sql.toString());
+        }
+        return mUpdateStatement;
+    }
+
+    /**
+     * The rows already stored for a location, sorted by date so they can be binary searched.
+     */
+    private static class StoredRows {
+        final long[] ids;
+        final long[] dates;
+        final ForecastBatch days;
+
+        StoredRows(int count) {
+            ids = new long[count];
+            dates = new long[count];
+            days = new ForecastBatch(count);
+        }
+    }
+}
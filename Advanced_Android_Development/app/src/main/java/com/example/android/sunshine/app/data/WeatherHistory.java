@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TimeZone;
+import java.util.TreeSet;
+
+/**
+ * Keeps the weather of days that are over, in one table per month named after it, such as
+ * {@code weather_history_201506}.
+ *
+ * The weather table itself only holds the days still to come, so the forecast queries stay as
+ * small as they always were.  Letting go of a month of history is a single {@code DROP TABLE},
+ * however many rows it holds, rather than a delete that has to find and remove each of them.
+ *
+ * Months are those of the UTC calendar.  Dates are normalized to local midnight, which can fall
+ * in the month before or after, so lookups take the neighbouring months in as well.
+ */
+class WeatherHistory {
+
+    static final String TABLE_PREFIX = WeatherEntry.TABLE_NAME + "_history_";
+
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    // The columns the weather table and every partition share, in the same order
+    private static final String COLUMNS = WeatherEntry._ID + ", " +
+            WeatherEntry.COLUMN_LOC_KEY + ", " +
+            WeatherEntry.COLUMN_DATE + ", " +
+            WeatherEntry.COLUMN_SHORT_DESC + ", " +
+            WeatherEntry.COLUMN_WEATHER_ID + ", " +
+            WeatherEntry.COLUMN_MIN_TEMP + ", " +
+            WeatherEntry.COLUMN_MAX_TEMP + ", " +
+            WeatherEntry.COLUMN_HUMIDITY + ", " +
+            WeatherEntry.COLUMN_PRESSURE + ", " +
+            WeatherEntry.COLUMN_WIND_SPEED + ", " +
+            WeatherEntry.COLUMN_DEGREES;
+
+    //location.location_setting = ? AND date >= ? AND date <= ?
+    private static final String sLocationSettingWithDateRangeSelection =
+            LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE + " >= ? AND " +
+                    WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE + " <= ? ";
+
+    private WeatherHistory() {
+    }
+
+    /**
+     * Moves the weather dated before the given date out of the weather table and into the
+     * partitions of the months it belongs to.  Only months that actually have days to move get
+     * a partition, so a long gap between syncs leaves no run of empty tables behind.  Call it
+     * within a transaction, so the days are never in both places or in neither.
+     *
+     * @return the number of days moved
+     */
+    static int archive(SQLiteDatabase db, long before) {
+        // A handful of days at most, shared by every location
+        Cursor cursor = db.rawQuery("SELECT DISTINCT " + WeatherEntry.COLUMN_DATE + " FROM " +
+                        WeatherEntry.TABLE_NAME + " WHERE " + WeatherEntry.COLUMN_DATE + " < ?",
+                new String[]{Long.toString(before)});
+        SortedSet<Integer> months = new TreeSet<Integer>();
+        try {
+            while (cursor.moveToNext()) {
+                months.add(getMonth(cursor.getLong(0)));
+            }
+        } finally {
+            cursor.close();
+        }
+        if (months.isEmpty()) {
+            return 0;
+        }
+
+        for (int month : months) {
+            long start = getMonthStart(month);
+            long end = Math.min(getMonthStart(addMonths(month, 1)), before);
+            createPartition(db, month);
+            db.execSQL("INSERT INTO " + getTableName(month) + " (" + COLUMNS + ") SELECT " +
+                            COLUMNS + " FROM " + WeatherEntry.TABLE_NAME + " WHERE " +
+                            WeatherEntry.COLUMN_DATE + " >= ? AND " +
+                            WeatherEntry.COLUMN_DATE + " < ?",
+                    new Object[]{start, end});
+        }
+        return db.delete(WeatherEntry.TABLE_NAME, WeatherEntry.COLUMN_DATE + " < ?",
+                new String[]{Long.toString(before)});
+    }
+
+    /**
+     * Drops the partitions of the months before the given one, as yyyyMM.
+     *
+     * @return true if any partition was dropped
+     */
+    static boolean dropMonthsBefore(SQLiteDatabase db, int firstKept) {
+        boolean dropped = false;
+        for (int month : getPartitions(db)) {
+            if (month < firstKept) {
+                db.execSQL("DROP TABLE IF EXISTS " + getTableName(month));
+                dropped = true;
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Drops every partition, as when the database is created again.
+     */
+    static void dropAll(SQLiteDatabase db) {
+        for (int month : getPartitions(db)) {
+            db.execSQL("DROP TABLE IF EXISTS " + getTableName(month));
+        }
+    }
+
+    /**
+     * Queries the weather of a location between two dates, inclusive, from both the partitions
+     * those dates fall in and the weather table.  The rows have the same columns as those of
+     * the weather table joined with the location table, under the same names.
+     */
+    static Cursor query(SQLiteDatabase db, String[] projection, String locationSetting,
+                        long startDate, long endDate, String sortOrder) {
+        StringBuilder weather = new StringBuilder("(");
+        for (int month : getPartitions(db)) {
+            long monthStart = getMonthStart(month);
+            long monthEnd = getMonthStart(addMonths(month, 1));
+            if (monthEnd + DAY_IN_MILLIS > startDate && monthStart - DAY_IN_MILLIS <= endDate) {
+                weather.append("SELECT ").append(COLUMNS).append(" FROM ")
+                        .append(getTableName(month)).append(" UNION ALL ");
+            }
+        }
+        weather.append("SELECT ").append(COLUMNS).append(" FROM ")
+                .append(WeatherEntry.TABLE_NAME).append(")");
+
+        //This is an inner join which looks like
+        //(history UNION ALL weather) AS weather INNER JOIN location
+        //ON weather.location_id = location._id
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(weather + " AS " + WeatherEntry.TABLE_NAME + " INNER JOIN " +
+                LocationEntry.TABLE_NAME +
+                " ON " + WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY +
+                " = " + LocationEntry.TABLE_NAME + "." + LocationEntry._ID);
+        return builder.query(db,
+                projection,
+                sLocationSettingWithDateRangeSelection,
+                new String[]{locationSetting, Long.toString(startDate), Long.toString(endDate)},
+                null,
+                null,
+                sortOrder);
+    }
+
+    private static void createPartition(SQLiteDatabase db, int month) {
+        // Like the weather table, but keeping the IDs the days had there, so they are unique
+        // across the history and the forecast alike
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + getTableName(month) + " (" +
+                WeatherEntry._ID + " INTEGER PRIMARY KEY," +
+                WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+                WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
+                WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
+                WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+                // The unique index serves lookups by location and date, in that order
+                " UNIQUE (" + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                WeatherEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);");
+    }
+
+    /**
+     * @return the months that have a partition, in ascending order
+     */
+    static List<Integer> getPartitions(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'table' AND " +
+                "name LIKE ? ORDER BY name", new String[]{TABLE_PREFIX + "%"});
+        try {
+            List<Integer> months = new ArrayList<Integer>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                // "_" matches any character in LIKE, so skip anything merely named similarly
+                String suffix = cursor.getString(0).substring(TABLE_PREFIX.length());
+                if (suffix.length() != 6) {
+                    continue;
+                }
+                try {
+                    months.add(Integer.parseInt(suffix));
+                } catch (NumberFormatException e) {
+                    // not a partition
+                }
+            }
+            return months;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    static String getTableName(int month) {
+        return TABLE_PREFIX + month;
+    }
+
+    /**
+     * @return the month the date falls in, as yyyyMM
+     */
+    static int getMonth(long date) {
+        Calendar calendar = Calendar.getInstance(UTC);
+        calendar.setTimeInMillis(date);
+        return calendar.get(Calendar.YEAR) * 100 + calendar.get(Calendar.MONTH) + 1;
+    }
+
+    /**
+     * @return the month the given number of months after the given one, both as yyyyMM
+     */
+    static int addMonths(int month, int count) {
+        int months = (month / 100) * 12 + (month % 100 - 1) + count;
+        return (months / 12) * 100 + months % 12 + 1;
+    }
+
+    private static long getMonthStart(int month) {
+        Calendar calendar = Calendar.getInstance(UTC);
+        calendar.clear();
+        calendar.set(month / 100, month % 100 - 1, 1);
+        return calendar.getTimeInMillis();
+    }
+}
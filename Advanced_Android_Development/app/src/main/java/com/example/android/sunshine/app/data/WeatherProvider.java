@@ -17,25 +17,54 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
+    private WeatherQueryCache mQueryCache;
+    private WeatherChangeNotifier mNotifier;
+
+    // While a batch is being applied on a thread, the URIs it changed are collected here so that
+    // observers are notified once per URI when the whole batch has been committed.
+    private final ThreadLocal<Set<Uri>> mBatchChanges = new ThreadLocal<Set<Uri>>();
+    // The weather writer shared by the inserts of the batch being applied on a thread, if any
+    private final ThreadLocal<WeatherDiffWriter> mBatchWriter = new ThreadLocal<WeatherDiffWriter>();
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
+    static final int WEATHER_HISTORY = 103;
     static final int LOCATION = 300;
+    static final int HOURLY = 400;
+    static final int HOURLY_WITH_LOCATION = 401;
+
+    // Past this many changed days of one location, the whole location is reported as changed
+    private static final int MAX_CHANGED_DAYS_PER_LOCATION = 3;
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    private static final SQLiteQueryBuilder sLocationQueryBuilder;
+    private static final SQLiteQueryBuilder sHourlyByLocationSettingQueryBuilder;
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
@@ -49,6 +78,19 @@ public class WeatherProvider extends ContentProvider {
                         "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
                         " = " + WeatherContract.LocationEntry.TABLE_NAME +
                         "." + WeatherContract.LocationEntry._ID);
+
+        sLocationQueryBuilder = new SQLiteQueryBuilder();
+        sLocationQueryBuilder.setTables(WeatherContract.LocationEntry.TABLE_NAME);
+
+        //hourly INNER JOIN location ON hourly.location_id = location._id
+        sHourlyByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
+        sHourlyByLocationSettingQueryBuilder.setTables(
+                WeatherContract.HourlyEntry.TABLE_NAME + " INNER JOIN " +
+                        WeatherContract.LocationEntry.TABLE_NAME +
+                        " ON " + WeatherContract.HourlyEntry.TABLE_NAME +
+                        "." + WeatherContract.HourlyEntry.COLUMN_LOC_KEY +
+                        " = " + WeatherContract.LocationEntry.TABLE_NAME +
+                        "." + WeatherContract.LocationEntry._ID);
     }
 
     //location.location_setting = ?
@@ -68,6 +110,13 @@ public class WeatherProvider extends ContentProvider {
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
+    //location.location_setting = ? AND time >= ? AND time < ?
+    private static final String sLocationSettingWithTimeRangeSelection =
+            WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.HourlyEntry.COLUMN_TIME + " >= ? AND " +
+                    WeatherContract.HourlyEntry.COLUMN_TIME + " < ? ";
+
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
@@ -83,12 +132,11 @@ public class WeatherProvider extends ContentProvider {
             selection = sLocationSettingWithStartDateSelection;
         }
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+        return mQueryCache.query(WEATHER_WITH_LOCATION,
+                sWeatherByLocationSettingQueryBuilder,
                 projection,
                 selection,
                 selectionArgs,
-                null,
-                null,
                 sortOrder
         );
     }
@@ -98,12 +146,36 @@ public class WeatherProvider extends ContentProvider {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+        return mQueryCache.query(WEATHER_WITH_LOCATION_AND_DATE,
+                sWeatherByLocationSettingQueryBuilder,
                 projection,
                 sLocationSettingAndDaySelection,
                 new String[]{locationSetting, Long.toString(date)},
-                null,
-                null,
+                sortOrder
+        );
+    }
+
+    private Cursor getWeatherHistory(Uri uri, String[] projection, String sortOrder) {
+        return WeatherHistory.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                WeatherContract.WeatherEntry.getLocationSettingFromUri(uri),
+                WeatherContract.WeatherEntry.getStartDateFromUri(uri),
+                WeatherContract.WeatherEntry.getEndDateFromUri(uri),
+                sortOrder
+        );
+    }
+
+    private Cursor getHourlyByLocationSetting(Uri uri, String[] projection, String sortOrder) {
+        // The range is always bound, even when open, so there is only ever the one query
+        String locationSetting = WeatherContract.HourlyEntry.getLocationSettingFromUri(uri);
+        long startTime = WeatherContract.HourlyEntry.getStartTimeFromUri(uri);
+        long endTime = WeatherContract.HourlyEntry.getEndTimeFromUri(uri);
+
+        return mQueryCache.query(HOURLY_WITH_LOCATION,
+                sHourlyByLocationSettingQueryBuilder,
+                projection,
+                sLocationSettingWithTimeRangeSelection,
+                new String[]{locationSetting, Long.toString(startTime), Long.toString(endTime)},
                 sortOrder
         );
     }
@@ -128,8 +200,13 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER, WEATHER);
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*", WEATHER_WITH_LOCATION);
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
+        matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/" +
+                WeatherContract.PATH_HISTORY, WEATHER_HISTORY);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+
+        matcher.addURI(authority, WeatherContract.PATH_HOURLY, HOURLY);
+        matcher.addURI(authority, WeatherContract.PATH_HOURLY + "/*", HOURLY_WITH_LOCATION);
         return matcher;
     }
 
@@ -140,6 +217,8 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
         mOpenHelper = new WeatherDbHelper(getContext());
+        mQueryCache = new WeatherQueryCache(mOpenHelper);
+        mNotifier = new WeatherChangeNotifier(getContext().getContentResolver());
         return true;
     }
 
@@ -160,10 +239,15 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_ITEM_TYPE;
             case WEATHER_WITH_LOCATION:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
+            case WEATHER_HISTORY:
+                return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case WEATHER:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case HOURLY:
+            case HOURLY_WITH_LOCATION:
+                return WeatherContract.HourlyEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -182,6 +266,11 @@ public class WeatherProvider extends ContentProvider {
                 retCursor = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
                 break;
             }
+            // "weather/*/history"
+            case WEATHER_HISTORY: {
+                retCursor = getWeatherHistory(uri, projection, sortOrder);
+                break;
+            }
             // "weather/*"
             case WEATHER_WITH_LOCATION: {
                 retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
@@ -202,8 +291,24 @@ public class WeatherProvider extends ContentProvider {
             }
             // "location"
             case LOCATION: {
+                retCursor = mQueryCache.query(LOCATION,
+                        sLocationQueryBuilder,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        sortOrder
+                );
+                break;
+            }
+            // "hourly/*"
+            case HOURLY_WITH_LOCATION: {
+                retCursor = getHourlyByLocationSetting(uri, projection, sortOrder);
+                break;
+            }
+            // "hourly"
+            case HOURLY: {
                 retCursor = mOpenHelper.getReadableDatabase().query(
-                        WeatherContract.LocationEntry.TABLE_NAME,
+                        WeatherContract.HourlyEntry.TABLE_NAME,
                         projection,
                         selection,
                         selectionArgs,
@@ -233,15 +338,25 @@ public class WeatherProvider extends ContentProvider {
         switch (match) {
             case WEATHER: {
                 normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
-                if ( _id > 0 )
-                    returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
-                else
-                    throw new android.database.SQLException("Failed to insert row into " + uri);
-                break;
+                WeatherDiffWriter.ChangeSet changes = new WeatherDiffWriter.ChangeSet();
+                WeatherDiffWriter writer = mBatchWriter.get();
+                long _id;
+                if (writer != null) {
+                    _id = writer.write(values, changes);
+                } else {
+                    writer = new WeatherDiffWriter(db);
+                    try {
+                        _id = writer.write(values, changes);
+                    } finally {
+                        writer.close();
+                    }
+                }
+                // Nothing to tell observers if the same row was already there
+                notifyWeatherChanges(db, changes);
+                return WeatherContract.WeatherEntry.buildWeatherUri(_id);
             }
             case LOCATION: {
-                long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+                long _id = mQueryCache.insertLocation(values);
                 if ( _id > 0 )
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
@@ -251,7 +366,7 @@ public class WeatherProvider extends ContentProvider {
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
         return returnUri;
     }
 
@@ -260,23 +375,38 @@ public class WeatherProvider extends ContentProvider {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         int rowsDeleted;
+        boolean deleteAll = null == selection;
         // this makes delete all rows return the number of rows deleted
         if ( null == selection ) selection = "1";
         switch (match) {
             case WEATHER:
-                rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                db.beginTransaction();
+                try {
+                    rowsDeleted = db.delete(
+                            WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                    // Deleting all the weather takes its history along
+                    if (deleteAll) {
+                        WeatherHistory.dropAll(db);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
                 break;
             case LOCATION:
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
                 break;
+            case HOURLY:
+                rowsDeleted = db.delete(
+                        WeatherContract.HourlyEntry.TABLE_NAME, selection, selectionArgs);
+                break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsDeleted;
     }
@@ -310,7 +440,7 @@ public class WeatherProvider extends ContentProvider {
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsUpdated;
     }
@@ -321,33 +451,325 @@ public class WeatherProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
+                // Rows that are already stored with the same values are left alone, so a sync
+                // that brings nothing new does not make every loader reload.
+                WeatherDiffWriter writer = new WeatherDiffWriter(db);
+                WeatherDiffWriter.ChangeSet changes;
                 db.beginTransaction();
-                int returnCount = 0;
                 try {
                     for (ContentValues value : values) {
                         normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            returnCount++;
-                        }
                     }
+                    changes = writer.write(values);
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
+                    writer.close();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
-                return returnCount;
+                notifyWeatherChanges(db, changes);
+                return changes.stored();
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.METHOD_STORE_FORECASTS.equals(method)) {
+            extras.setClassLoader(ForecastBatch.class.getClassLoader());
+            ArrayList<ForecastBatch> forecasts =
+                    extras.getParcelableArrayList(WeatherContract.EXTRA_FORECASTS);
+            ArrayList<HourlyBatch> hourlyForecasts =
+                    extras.getParcelableArrayList(WeatherContract.EXTRA_HOURLY_FORECASTS);
+            long deleteBefore = extras.getLong(WeatherContract.EXTRA_DELETE_BEFORE, 0);
+            int historyMonths = extras.getInt(WeatherContract.EXTRA_HISTORY_MONTHS,
+                    WeatherContract.DEFAULT_HISTORY_MONTHS);
+            return storeForecasts(forecasts != null
+                            ? forecasts : new ArrayList<ForecastBatch>(),
+                    hourlyForecasts != null
+                            ? hourlyForecasts : new ArrayList<HourlyBatch>(),
+                    deleteBefore, historyMonths);
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Stores the forecasts and hourly forecasts, adding their locations where needed, and moves
+     * the weather dated before the given date into the history, dropping the months of it that
+     * are older than the given number of months before that date, all in one transaction.  The
+     * days and steps are bound straight from each batch, and observers only hear about the
+     * tables that actually changed.
+     *
+     * @return the numbers of weather and hourly rows now holding the forecasts, and how long
+     * each part of the store took, as described for {@link WeatherContract#METHOD_STORE_FORECASTS}
+     */
+    private Bundle storeForecasts(ArrayList<ForecastBatch> forecasts,
+                                  ArrayList<HourlyBatch> hourlyForecasts,
+                                  long deleteBefore, int historyMonths) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final WeatherDiffWriter writer = new WeatherDiffWriter(db);
+        final HourlyWriter hourlyWriter = new HourlyWriter(db);
+        WeatherDiffWriter.ChangeSet changes = new WeatherDiffWriter.ChangeSet();
+        boolean locationsChanged = false;
+        Map<String, Set<Long>> deletedDays = Collections.emptyMap();
+        boolean historyDropped = false;
+        int hoursStored = 0;
+        Set<String> hourlyChanged = new LinkedHashSet<String>();
+        // How long each part took, all of them within the one transaction
+        long locationMillis = 0;
+        long weatherMillis = 0;
+        long hourlyMillis = 0;
+        long historyMillis = 0;
+        long startedAt;
+        db.beginTransaction();
+        try {
+            for (ForecastBatch forecast : forecasts) {
+                if (forecast.isEmpty()) {
+                    continue;
+                }
+                startedAt = SystemClock.elapsedRealtime();
+                long locationId = findLocation(db, forecast.getLocationSetting());
+                if (locationId == -1) {
+                    locationId = addLocation(forecast.getLocationSetting(),
+                            forecast.getCityName(), forecast.getCityLatitude(),
+                            forecast.getCityLongitude());
+                    locationsChanged = true;
+                }
+                locationMillis += SystemClock.elapsedRealtime() - startedAt;
+
+                startedAt = SystemClock.elapsedRealtime();
+                for (int i = 0; i < forecast.size(); i++) {
+                    forecast.setDate(i, WeatherContract.normalizeDate(forecast.getDate(i)));
+                }
+                writer.write(locationId, forecast, changes);
+                weatherMillis += SystemClock.elapsedRealtime() - startedAt;
+            }
+            for (HourlyBatch hourly : hourlyForecasts) {
+                if (hourly.isEmpty()) {
+                    continue;
+                }
+                startedAt = SystemClock.elapsedRealtime();
+                long locationId = findLocation(db, hourly.getLocationSetting());
+                if (locationId == -1) {
+                    locationId = addLocation(hourly.getLocationSetting(), hourly.getCityName(),
+                            hourly.getCityLatitude(), hourly.getCityLongitude());
+                    locationsChanged = true;
+                }
+                locationMillis += SystemClock.elapsedRealtime() - startedAt;
+
+                startedAt = SystemClock.elapsedRealtime();
+                if (hourlyWriter.write(locationId, hourly) > 0) {
+                    hourlyChanged.add(hourly.getLocationSetting());
+                }
+                hoursStored += hourly.size();
+                hourlyMillis += SystemClock.elapsedRealtime() - startedAt;
+            }
+            if (deleteBefore > 0) {
+                startedAt = SystemClock.elapsedRealtime();
+                // move old data out of the way of the forecast, but keep it as history
+                deletedDays = findDaysBefore(db, deleteBefore);
+                if (!deletedDays.isEmpty()) {
+                    WeatherHistory.archive(db, deleteBefore);
+                }
+                // and only for as long as we were asked to
+                historyDropped = WeatherHistory.dropMonthsBefore(db, WeatherHistory.addMonths(
+                        WeatherHistory.getMonth(deleteBefore), -historyMonths));
+                historyMillis = SystemClock.elapsedRealtime() - startedAt;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            writer.close();
+            hourlyWriter.close();
+        }
+        if (locationsChanged) {
+            notifyChange(WeatherContract.LocationEntry.CONTENT_URI);
+        }
+        notifyWeatherChanges(db, changes);
+        if (historyDropped) {
+            notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+        }
+        for (Map.Entry<String, Set<Long>> entry : deletedDays.entrySet()) {
+            notifyWeatherChange(entry.getKey(), entry.getValue());
+        }
+        for (String locationSetting : hourlyChanged) {
+            notifyChange(WeatherContract.HourlyEntry.buildHourlyLocation(locationSetting));
+        }
+        Bundle result = new Bundle();
+        result.putInt(WeatherContract.EXTRA_ROWS_STORED, changes.stored());
+        result.putInt(WeatherContract.EXTRA_HOURS_STORED, hoursStored);
+        result.putLong(WeatherContract.EXTRA_LOCATION_MILLIS, locationMillis);
+        result.putLong(WeatherContract.EXTRA_WEATHER_MILLIS, weatherMillis);
+        result.putLong(WeatherContract.EXTRA_HOURLY_MILLIS, hourlyMillis);
+        result.putLong(WeatherContract.EXTRA_HISTORY_MILLIS, historyMillis);
+        return result;
+    }
+
+    /**
+     * Adds a location with the compiled statement.
+     *
+     * @return the row ID of the new location
+     */
+    private long addLocation(String locationSetting, String cityName, double lat, double lon) {
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                locationSetting);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
+        long locationId = mQueryCache.insertLocation(locationValues);
+        if (locationId == -1) {
+            throw new android.database.SQLException("Failed to insert location "
+                    + locationSetting);
+        }
+        return locationId;
+    }
+
+    /**
+     * @return the dates of the weather stored before the given date, by location setting
+     */
+    private Map<String, Set<Long>> findDaysBefore(SQLiteDatabase db, long date) {
+        Cursor cursor = sWeatherByLocationSettingQueryBuilder.query(db,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                        WeatherContract.WeatherEntry.COLUMN_DATE},
+                WeatherContract.WeatherEntry.COLUMN_DATE + " < ?",
+                new String[]{Long.toString(date)},
+                null,
+                null,
+                null);
+        try {
+            Map<String, Set<Long>> days = new HashMap<String, Set<Long>>();
+            while (cursor.moveToNext()) {
+                Set<Long> dates = days.get(cursor.getString(0));
+                if (dates == null) {
+                    dates = new TreeSet<Long>();
+                    days.put(cursor.getString(0), dates);
+                }
+                dates.add(cursor.getLong(1));
+            }
+            return days;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return the row ID of the location with the given setting, or -1 if it is not stored
+     */
+    private long findLocation(SQLiteDatabase db, String locationSetting) {
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting},
+                null,
+                null,
+                null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return the setting of the location with the given row ID, or null if it is not stored
+     */
+    private String findLocationSetting(SQLiteDatabase db, long locationId) {
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                WeatherContract.LocationEntry._ID + " = ?",
+                new String[]{Long.toString(locationId)},
+                null,
+                null,
+                null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Applies all of the operations in a single transaction.  Observers are notified once per
+     * changed URI after the transaction has been committed, rather than once per operation.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final Set<Uri> changes = new LinkedHashSet<Uri>();
+        final WeatherDiffWriter writer = new WeatherDiffWriter(db);
+        ContentProviderResult[] results;
+        mBatchChanges.set(changes);
+        mBatchWriter.set(writer);
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mBatchChanges.remove();
+            mBatchWriter.remove();
+            writer.close();
+        }
+        for (Uri uri : changes) {
+            dispatchChange(uri);
+        }
+        return results;
+    }
+
+    /**
+     * Reports the days a write inserted or updated, by location.
+     */
+    private void notifyWeatherChanges(SQLiteDatabase db, WeatherDiffWriter.ChangeSet changes) {
+        for (Map.Entry<Long, Set<Long>> entry : changes.changedDays.entrySet()) {
+            String locationSetting = findLocationSetting(db, entry.getKey());
+            if (locationSetting != null) {
+                notifyWeatherChange(locationSetting, entry.getValue());
+            } else {
+                // Only possible with a dangling location key, so fall back to everything
+                notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+            }
+        }
+    }
+
+    /**
+     * Reports a change to the given days of a location's weather as narrowly as is useful:
+     * {@code weather/<location>/<date>} for a few days, so the detail view of any other day does
+     * not reload, or {@code weather/<location>} for more.  Observers of a wider URI, like the
+     * forecast list, hear about every day under it either way.
+     */
+    private void notifyWeatherChange(String locationSetting, Set<Long> dates) {
+        if (dates.size() > MAX_CHANGED_DAYS_PER_LOCATION) {
+            notifyChange(WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting));
+            return;
+        }
+        for (long date : dates) {
+            notifyChange(WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                    locationSetting, date));
+        }
+    }
+
+    private void notifyChange(Uri uri) {
+        Set<Uri> batchChanges = mBatchChanges.get();
+        if (batchChanges != null) {
+            batchChanges.add(uri);
+        } else {
+            dispatchChange(uri);
+        }
+    }
+
+    private void dispatchChange(Uri uri) {
+        mNotifier.notifyChange(uri);
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
     @Override
     @TargetApi(11)
     public void shutdown() {
+        mQueryCache.clear();
         mOpenHelper.close();
         super.shutdown();
     }
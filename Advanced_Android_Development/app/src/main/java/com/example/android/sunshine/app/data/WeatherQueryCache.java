@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
+import android.util.LruCache;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the SQL for the queries {@link WeatherProvider} runs most often, so it is built once
+ * instead of on every call, along with a compiled statement for inserting locations.
+ *
+ * Because the cached SQL is always the exact same string, SQLite's own per-connection statement
+ * cache also gets to reuse the prepared plan.  Everything is dropped when the database is
+ * reopened or its schema is recreated by {@link WeatherDbHelper}.
+ */
+class WeatherQueryCache {
+
+    // The widgets, Muzei, the watch face and notifications only use a handful of queries
+    private static final int MAX_QUERIES = 32;
+
+    private static final String[] LOCATION_COLUMNS = {
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_CITY_NAME,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private final WeatherDbHelper mOpenHelper;
+    private final LruCache<String, String> mQueries = new LruCache<String, String>(MAX_QUERIES);
+
+    // The database and schema the cached statements were compiled against
+    private SQLiteDatabase mDb;
+    private int mSchemaGeneration;
+    private SQLiteStatement mLocationInsert;
+
+    WeatherQueryCache(WeatherDbHelper openHelper) {
+        mOpenHelper = openHelper;
+    }
+
+    /**
+     * Runs a query against the given builder's tables, reusing its SQL if it was built before.
+     *
+     * @param match the UriMatcher code the query is for
+     */
+    Cursor query(int match, SQLiteQueryBuilder builder, String[] projection, String selection,
+                 String[] selectionArgs, String sortOrder) {
+        SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+        validate(db);
+
+        String key = match + "|" + Arrays.toString(projection) + "|" + selection + "|" + sortOrder;
+        String sql = mQueries.get(key);
+        if (sql == null) {
+            sql = builder.buildQuery(projection, selection, null, null, sortOrder, null);
+            mQueries.put(key, sql);
+        }
+        return db.rawQuery(sql, selectionArgs);
+    }
+
+    /**
+     * Inserts a location with the compiled statement, if the values are a plain location row.
+     *
+     * @return the row ID of the new location, or -1 if it could not be inserted
+     */
+    long insertLocation(ContentValues values) {
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        if (values.size() != LOCATION_COLUMNS.length) {
+            return db.insert(LocationEntry.TABLE_NAME, null, values);
+        }
+        for (String column : LOCATION_COLUMNS) {
+            if (values.get(column) == null) {
+                return db.insert(LocationEntry.TABLE_NAME, null, values);
+            }
+        }
+
+        synchronized (this) {
+            validate(db);
+            if (mLocationInsert == null) {
+                mLocationInsert = db.compileStatement("INSERT INTO " + LocationEntry.TABLE_NAME
+                        + " (" + LocationEntry.COLUMN_LOCATION_SETTING
+                        + ", " + LocationEntry.COLUMN_CITY_NAME
+                        + ", " + LocationEntry.COLUMN_COORD_LAT
+                        + ", " + LocationEntry.COLUMN_COORD_LONG
+                        + ") VALUES (?, ?, ?, ?)");
+            }
+            mLocationInsert.bindString(1, values.getAsString(LocationEntry.COLUMN_LOCATION_SETTING));
+            mLocationInsert.bindString(2, values.getAsString(LocationEntry.COLUMN_CITY_NAME));
+            mLocationInsert.bindDouble(3, values.getAsDouble(LocationEntry.COLUMN_COORD_LAT));
+            mLocationInsert.bindDouble(4, values.getAsDouble(LocationEntry.COLUMN_COORD_LONG));
+            try {
+                return mLocationInsert.executeInsert();
+            } catch (android.database.SQLException e) {
+                // Same as SQLiteDatabase.insert, which reports failures as -1
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Drops everything that was built for another database or schema.
+     */
+    synchronized void validate(SQLiteDatabase db) {
+        int schemaGeneration = mOpenHelper.getSchemaGeneration();
+        if (db != mDb || schemaGeneration != mSchemaGeneration) {
+            clear();
+            mDb = db;
+            mSchemaGeneration = schemaGeneration;
+        }
+    }
+
+    synchronized void clear() {
+        if (mLocationInsert != null) {
+            mLocationInsert.close();
+            mLocationInsert = null;
+        }
+        mQueries.evictAll();
+        mDb = null;
+    }
+}
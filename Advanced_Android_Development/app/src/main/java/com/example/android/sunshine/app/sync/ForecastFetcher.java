@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.ForecastBatch;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.concurrent.Callable;
+
+/**
+ * Downloads and parses the forecast for a single location.
+ *
+ * A fetch only reads from the database, so several of them can run at once.
+ * {@link SunshineSyncAdapter} stores the results of all of them in one go.
+ */
+class ForecastFetcher implements Callable<ForecastFetcher.Result> {
+    private static final String LOG_TAG = ForecastFetcher.class.getSimpleName();
+
+    static final int NUM_DAYS = 14;
+
+    /**
+     * What a fetch came back with.  When {@link #forecast} is null there is nothing to store,
+     * either because the fetch failed or because the stored forecast is still current.
+     */
+    static class Result {
+        final String locationSetting;
+        @SunshineSyncAdapter.LocationStatus int status = SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN;
+
+        ForecastBatch forecast;
+        int julianStartDay;
+        // The forecast in three hour steps, fetched alongside by a HourlyForecastFetcher
+        HourlyForecastFetcher.Result hourly;
+
+        // The request for the daily forecast, for SyncMetrics and the validator cache
+        final OwmRequest request;
+
+        Result(String locationSetting, OwmRequest request) {
+            this.locationSetting = locationSetting;
+            this.request = request;
+        }
+    }
+
+    private final Context mContext;
+    private final HttpValidatorCache mValidatorCache;
+    private final String mLocationSetting;
+    private final String mLatitude;
+    private final String mLongitude;
+
+    /**
+     * @param latitude latitude to query by instead of the location setting, or null
+     * @param longitude longitude to query by instead of the location setting, or null
+     */
+    ForecastFetcher(Context context, HttpValidatorCache validatorCache, String locationSetting,
+                    String latitude, String longitude) {
+        mContext = context;
+        mValidatorCache = validatorCache;
+        mLocationSetting = locationSetting;
+        mLatitude = latitude;
+        mLongitude = longitude;
+    }
+
+    @Override
+    public Result call() {
+        // Construct the URL for the OpenWeatherMap query
+        final String FORECAST_BASE_URL = "http://api.openweathermap.org/data/2.5/forecast/daily?";
+        final String DAYS_PARAM = "cnt";
+        OwmRequest request = new OwmRequest(FORECAST_BASE_URL, mLocationSetting, mLatitude,
+                mLongitude, DAYS_PARAM, Integer.toString(NUM_DAYS));
+        Result result = new Result(mLocationSetting, request);
+
+        try {
+            // Validators from the last response we stored for this request.  They are only
+            // trusted while today's forecast for the location is actually in the database.
+            result.julianStartDay = getJulianToday();
+            HttpValidatorCache.Entry validators =
+                    mValidatorCache.get(request.validatorKey, result.julianStartDay);
+            if (validators != null && !hasForecastForToday()) {
+                validators = null;
+            }
+
+            InputStream inputStream = request.send(validators);
+            if (inputStream == null) {
+                // What we have is still current, so there is nothing to parse, store or push.
+                Log.d(LOG_TAG, "Forecast not modified for " + mLocationSetting);
+                result.status = SunshineSyncAdapter.LOCATION_STATUS_OK;
+                return result;
+            }
+
+            // OWM returns daily forecasts based upon the local time of the city that is being
+            // asked for, which means that we need to know the GMT offset to translate this data
+            // properly.  Since this data is also sent in-order and the first day is always the
+            // current day, the collector takes advantage of that to get a nice normalized UTC
+            // date for all of our weather.
+            ForecastRowCollector collector =
+                    new ForecastRowCollector(result.julianStartDay, NUM_DAYS);
+            int errorCode;
+            try {
+                errorCode = ForecastJsonParser.parse(inputStream, collector);
+            } finally {
+                request.finishReading();
+            }
+
+            // do we have an error?
+            switch (errorCode) {
+                case HttpURLConnection.HTTP_OK:
+                    break;
+                case HttpURLConnection.HTTP_NOT_FOUND:
+                    result.status = SunshineSyncAdapter.LOCATION_STATUS_INVALID;
+                    return result;
+                default:
+                    result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+                    return result;
+            }
+
+            result.status = SunshineSyncAdapter.LOCATION_STATUS_OK;
+            if (request.acceptBody(result.julianStartDay)) {
+                // Same forecast as the one already stored, so skip the writes and the updates.
+                Log.d(LOG_TAG, "Forecast unchanged for " + mLocationSetting);
+                return result;
+            }
+
+            collector.mForecast.setLocation(mLocationSetting, collector.mCityName,
+                    collector.mCityLatitude, collector.mCityLongitude);
+            result.forecast = collector.mForecast;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error ", e);
+            // If the code didn't successfully get the weather data, there's no point in attempting
+            // to parse it.
+            result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            e.printStackTrace();
+            result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID;
+        } finally {
+            request.disconnect();
+        }
+        return result;
+    }
+
+    static int getJulianToday() {
+        Time dayTime = new Time();
+        dayTime.setToNow();
+        return Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+    }
+
+    /**
+     * @return true if the database holds today's forecast for this location
+     */
+    private boolean hasForecastForToday() {
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                mLocationSetting, System.currentTimeMillis());
+        Cursor cursor = mContext.getContentResolver().query(weatherUri,
+                new String[]{WeatherContract.WeatherEntry.TABLE_NAME + "." +
+                        WeatherContract.WeatherEntry._ID},
+                null, null, null);
+        if (cursor == null) {
+            return false;
+        }
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Collects the days handed out by {@link ForecastJsonParser} into a {@link ForecastBatch}.
+     * The location is filled in once parsing is done, since OWM may send the list of days before
+     * the city they belong to.
+     */
+    private static class ForecastRowCollector implements ForecastJsonParser.Handler {
+        final ForecastBatch mForecast;
+        // we work exclusively in UTC
+        final Time mDayTime = new Time();
+        final int mJulianStartDay;
+        String mCityName;
+        double mCityLatitude;
+        double mCityLongitude;
+
+        ForecastRowCollector(int julianStartDay, int expectedDays) {
+            mForecast = new ForecastBatch(expectedDays);
+            mJulianStartDay = julianStartDay;
+        }
+
+        @Override
+        public void onCity(String cityName, double lat, double lon) {
+            mCityName = cityName;
+            mCityLatitude = lat;
+            mCityLongitude = lon;
+        }
+
+        @Override
+        public void onDay(int day, double pressure, int humidity, double windSpeed,
+                          double windDirection, double high, double low, String description,
+                          int weatherId) {
+            // Cheating to convert this to UTC time, which is what we want anyhow
+            if (description == null) {
+                // The weather table can't store a day without a description
+                return;
+            }
+            long dateTime = mDayTime.setJulianDay(mJulianStartDay + day);
+
+            mForecast.add(dateTime, weatherId, description, high, low, humidity, pressure,
+                    windSpeed, windDirection);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+
+/**
+ * Pull parser for the OpenWeatherMap daily forecast response.
+ *
+ * The "city" and "list" sections are read straight off the stream and each day is handed to a
+ * {@link Handler} as soon as it has been read, so neither the raw response nor a JSONObject tree
+ * is ever held in memory.  OWM does not promise any ordering of the top level keys, so the
+ * handler may see days before it sees the city.
+ */
+class ForecastJsonParser {
+
+    // These are the names of the JSON objects that need to be extracted.
+
+    // Location information
+    private static final String OWM_CITY = "city";
+    private static final String OWM_CITY_NAME = "name";
+    private static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    private static final String OWM_LIST = "list";
+
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_MAX = "max";
+    private static final String OWM_MIN = "min";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_DESCRIPTION = "main";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    // Bits for the values every day of the forecast must carry
+    private static final int DAY_PRESSURE = 1;
+    private static final int DAY_HUMIDITY = 1 << 1;
+    private static final int DAY_WIND_SPEED = 1 << 2;
+    private static final int DAY_WIND_DIRECTION = 1 << 3;
+    private static final int DAY_MAX = 1 << 4;
+    private static final int DAY_MIN = 1 << 5;
+    private static final int DAY_DESCRIPTION = 1 << 6;
+    private static final int DAY_WEATHER_ID = 1 << 7;
+    private static final int DAY_COMPLETE = (1 << 8) - 1;
+
+    /**
+     * Receives the city a response is for.
+     */
+    interface CityHandler {
+        void onCity(String cityName, double lat, double lon);
+    }
+
+    /**
+     * Receives the parsed pieces of a forecast, in the order they appear in the response.
+     */
+    interface Handler extends CityHandler {
+        /**
+         * @param day index of this day in the "list" array, 0 being the first (current) day
+         */
+        void onDay(int day, double pressure, int humidity, double windSpeed,
+                   double windDirection, double high, double low, String description,
+                   int weatherId);
+    }
+
+    private ForecastJsonParser() {
+    }
+
+    /**
+     * Parses a forecast response, closing the stream when done.
+     *
+     * @param in the response body
+     * @param handler receives the city and the days of the forecast
+     * @return the "cod" of the response, or {@link HttpURLConnection#HTTP_OK} if there was none.
+     * Anything handed to the handler should be ignored unless this is HTTP_OK.
+     * @throws IOException if the stream could not be read
+     * @throws JSONException if the response is not a valid forecast
+     */
+    static int parse(InputStream in, Handler handler) throws IOException, JSONException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            return readForecast(reader, handler);
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            throw new JSONException(e.getMessage());
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static int readForecast(JsonReader reader, Handler handler)
+            throws IOException, JSONException {
+        int messageCode = HttpURLConnection.HTTP_OK;
+        boolean hasCity = false;
+        boolean hasList = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_MESSAGE_CODE.equals(name)) {
+                // OWM sends this as a string on some endpoints and as a number on others.
+                messageCode = reader.nextInt();
+            } else if (OWM_CITY.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                readCity(reader, handler);
+                hasCity = true;
+            } else if (OWM_LIST.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                readList(reader, handler);
+                hasList = true;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (messageCode == HttpURLConnection.HTTP_OK) {
+            if (!hasCity) {
+                throw new JSONException("No value for " + OWM_CITY);
+            }
+            if (!hasList) {
+                throw new JSONException("No value for " + OWM_LIST);
+            }
+        }
+        return messageCode;
+    }
+
+    /**
+     * Reads the "city" object OWM sends with every forecast, daily or hourly.
+     */
+    static void readCity(JsonReader reader, CityHandler handler)
+            throws IOException, JSONException {
+        String cityName = null;
+        double lat = 0;
+        double lon = 0;
+        boolean hasCoord = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY_NAME.equals(name)) {
+                cityName = reader.nextString();
+            } else if (OWM_COORD.equals(name)) {
+                int found = 0;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String coordName = reader.nextName();
+                    if (OWM_LATITUDE.equals(coordName)) {
+                        lat = reader.nextDouble();
+                        found |= 1;
+                    } else if (OWM_LONGITUDE.equals(coordName)) {
+                        lon = reader.nextDouble();
+                        found |= 2;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                hasCoord = found == 3;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (cityName == null || !hasCoord) {
+            throw new JSONException("Incomplete " + OWM_CITY);
+        }
+        handler.onCity(cityName, lat, lon);
+    }
+
+    private static void readList(JsonReader reader, Handler handler)
+            throws IOException, JSONException {
+        int day = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            readDay(reader, handler, day++);
+        }
+        reader.endArray();
+    }
+
+    private static void readDay(JsonReader reader, Handler handler, int day)
+            throws IOException, JSONException {
+        double pressure = 0;
+        int humidity = 0;
+        double windSpeed = 0;
+        double windDirection = 0;
+        double high = 0;
+        double low = 0;
+        String description = null;
+        int weatherId = 0;
+        int found = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_PRESSURE.equals(name)) {
+                pressure = reader.nextDouble();
+                found |= DAY_PRESSURE;
+            } else if (OWM_HUMIDITY.equals(name)) {
+                humidity = (int) reader.nextDouble();
+                found |= DAY_HUMIDITY;
+            } else if (OWM_WINDSPEED.equals(name)) {
+                windSpeed = reader.nextDouble();
+                found |= DAY_WIND_SPEED;
+            } else if (OWM_WIND_DIRECTION.equals(name)) {
+                windDirection = reader.nextDouble();
+                found |= DAY_WIND_DIRECTION;
+            } else if (OWM_TEMPERATURE.equals(name)) {
+                // Temperatures are in a child object called "temp".
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String tempName = reader.nextName();
+                    if (OWM_MAX.equals(tempName)) {
+                        high = reader.nextDouble();
+                        found |= DAY_MAX;
+                    } else if (OWM_MIN.equals(tempName)) {
+                        low = reader.nextDouble();
+                        found |= DAY_MIN;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WEATHER.equals(name)) {
+                // Description is in a child array called "weather", which is 1 element long.
+                // That element also contains a weather code.
+                reader.beginArray();
+                if (reader.hasNext()) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String weatherName = reader.nextName();
+                        if (OWM_DESCRIPTION.equals(weatherName)) {
+                            description = reader.nextString();
+                            found |= DAY_DESCRIPTION;
+                        } else if (OWM_WEATHER_ID.equals(weatherName)) {
+                            weatherId = reader.nextInt();
+                            found |= DAY_WEATHER_ID;
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                while (reader.hasNext()) {
+                    reader.skipValue();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (found != DAY_COMPLETE) {
+            throw new JSONException("Incomplete forecast for day " + day);
+        }
+        handler.onDay(day, pressure, humidity, windSpeed, windDirection, high, low,
+                description, weatherId);
+    }
+}
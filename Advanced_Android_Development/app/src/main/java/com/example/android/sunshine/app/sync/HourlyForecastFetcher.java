@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.HourlyBatch;
+import com.example.android.sunshine.app.data.WeatherContract.HourlyEntry;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.concurrent.Callable;
+
+/**
+ * Downloads and parses the forecast in three hour steps for a single location.
+ *
+ * It runs alongside the {@link ForecastFetcher} for the same location, and like it sends a
+ * conditional request, so an hourly forecast that has not changed is neither parsed nor stored.
+ * The steps are streamed off the response straight into an {@link HourlyBatch}, already packed
+ * as they are stored.  The hourly forecast is extra detail, so a failed fetch only means the
+ * stored one is kept; the location status is left to the daily forecast.
+ */
+class HourlyForecastFetcher implements Callable<HourlyForecastFetcher.Result> {
+    private static final String LOG_TAG = HourlyForecastFetcher.class.getSimpleName();
+
+    /**
+     * What a fetch came back with.  When {@link #forecast} is null there is nothing to store,
+     * either because the fetch failed or because the stored forecast is still current.
+     */
+    static class Result {
+        HourlyBatch forecast;
+
+        // The request, for SyncMetrics and the validator cache
+        final OwmRequest request;
+
+        Result(OwmRequest request) {
+            this.request = request;
+        }
+    }
+
+    private final Context mContext;
+    private final HttpValidatorCache mValidatorCache;
+    private final String mLocationSetting;
+    private final String mLatitude;
+    private final String mLongitude;
+
+    /**
+     * @param latitude latitude to query by instead of the location setting, or null
+     * @param longitude longitude to query by instead of the location setting, or null
+     */
+    HourlyForecastFetcher(Context context, HttpValidatorCache validatorCache,
+                          String locationSetting, String latitude, String longitude) {
+        mContext = context;
+        mValidatorCache = validatorCache;
+        mLocationSetting = locationSetting;
+        mLatitude = latitude;
+        mLongitude = longitude;
+    }
+
+    @Override
+    public Result call() {
+        // Same parameters as the daily forecast, but for the five day forecast in steps
+        final String FORECAST_BASE_URL = "http://api.openweathermap.org/data/2.5/forecast?";
+        OwmRequest request = new OwmRequest(FORECAST_BASE_URL, mLocationSetting, mLatitude,
+                mLongitude);
+        Result result = new Result(request);
+
+        try {
+            // The steps carry their own times, so the same body means the same rows on any day.
+            // The validators are still only trusted while steps to come are in the database.
+            int julianDay = ForecastFetcher.getJulianToday();
+            HttpValidatorCache.Entry validators =
+                    mValidatorCache.get(request.validatorKey, julianDay);
+            if (validators != null && !hasStepsAhead()) {
+                validators = null;
+            }
+
+            InputStream inputStream = request.send(validators);
+            if (inputStream == null) {
+                Log.d(LOG_TAG, "Hourly forecast not modified for " + mLocationSetting);
+                return result;
+            }
+
+            StepCollector collector = new StepCollector();
+            int errorCode;
+            try {
+                errorCode = HourlyJsonParser.parse(inputStream, collector);
+            } finally {
+                request.finishReading();
+            }
+            if (errorCode != HttpURLConnection.HTTP_OK) {
+                Log.d(LOG_TAG, "Hourly forecast failed for " + mLocationSetting + ": "
+                        + errorCode);
+                return result;
+            }
+            if (request.acceptBody(julianDay)) {
+                Log.d(LOG_TAG, "Hourly forecast unchanged for " + mLocationSetting);
+                return result;
+            }
+            collector.mForecast.setLocation(mLocationSetting, collector.mCityName,
+                    collector.mCityLatitude, collector.mCityLongitude);
+            result.forecast = collector.mForecast;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error ", e);
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+        } finally {
+            request.disconnect();
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the database holds steps from now on for this location
+     */
+    private boolean hasStepsAhead() {
+        Cursor cursor = mContext.getContentResolver().query(
+                HourlyEntry.buildHourlyLocationWithRange(mLocationSetting,
+                        System.currentTimeMillis(), Long.MAX_VALUE),
+                new String[]{HourlyEntry.COLUMN_TIME},
+                null, null, null);
+        if (cursor == null) {
+            return false;
+        }
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Collects the steps handed out by {@link HourlyJsonParser} into an {@link HourlyBatch}.
+     */
+    private static class StepCollector implements HourlyJsonParser.Handler {
+        final HourlyBatch mForecast = new HourlyBatch();
+        String mCityName;
+        double mCityLatitude;
+        double mCityLongitude;
+
+        @Override
+        public void onCity(String cityName, double lat, double lon) {
+            mCityName = cityName;
+            mCityLatitude = lat;
+            mCityLongitude = lon;
+        }
+
+        @Override
+        public void onStep(long time, double temperature, double humidity, int weatherId,
+                           double windSpeed, double windDirection) {
+            // OWM sends the steps in order; anything else is dropped rather than stored twice
+            if (!mForecast.isEmpty() && time <= mForecast.getTime(mForecast.size() - 1)) {
+                return;
+            }
+            mForecast.add(time, temperature, weatherId, humidity, windSpeed, windDirection);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+
+/**
+ * Pull parser for the OpenWeatherMap forecast in three hour steps.
+ *
+ * Works like {@link ForecastJsonParser}: each step is handed to a {@link Handler} as soon as it
+ * has been read off the stream, with only the handful of values the hourly table stores pulled
+ * out of it.
+ */
+class HourlyJsonParser {
+
+    private static final String OWM_CITY = "city";
+    private static final String OWM_LIST = "list";
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    // Each step's forecast info is an element of the "list" array
+    private static final String OWM_TIME = "dt";
+
+    // Temperature and humidity are children of the "main" object
+    private static final String OWM_MAIN = "main";
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_HUMIDITY = "humidity";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private static final String OWM_WIND = "wind";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    // Bits for the values every step must carry.  OWM leaves the wind direction out when the
+    // air is calm, so it is not one of them.
+    private static final int STEP_TIME = 1;
+    private static final int STEP_TEMPERATURE = 1 << 1;
+    private static final int STEP_HUMIDITY = 1 << 2;
+    private static final int STEP_WEATHER_ID = 1 << 3;
+    private static final int STEP_WIND_SPEED = 1 << 4;
+    private static final int STEP_COMPLETE = (1 << 5) - 1;
+
+    /**
+     * Receives the parsed pieces of an hourly forecast, in the order they appear in the response.
+     */
+    interface Handler extends ForecastJsonParser.CityHandler {
+        /**
+         * @param time start of the step, in seconds since the epoch
+         */
+        void onStep(long time, double temperature, double humidity, int weatherId,
+                    double windSpeed, double windDirection);
+    }
+
+    private HourlyJsonParser() {
+    }
+
+    /**
+     * Parses an hourly forecast response, closing the stream when done.
+     *
+     * @return the "cod" of the response, or {@link HttpURLConnection#HTTP_OK} if there was none.
+     * Anything handed to the handler should be ignored unless this is HTTP_OK.
+     * @throws IOException if the stream could not be read
+     * @throws JSONException if the response is not a valid forecast
+     */
+    static int parse(InputStream in, Handler handler) throws IOException, JSONException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            return readForecast(reader, handler);
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            throw new JSONException(e.getMessage());
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static int readForecast(JsonReader reader, Handler handler)
+            throws IOException, JSONException {
+        int messageCode = HttpURLConnection.HTTP_OK;
+        boolean hasCity = false;
+        boolean hasList = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_MESSAGE_CODE.equals(name)) {
+                messageCode = reader.nextInt();
+            } else if (OWM_CITY.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                ForecastJsonParser.readCity(reader, handler);
+                hasCity = true;
+            } else if (OWM_LIST.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readStep(reader, handler);
+                }
+                reader.endArray();
+                hasList = true;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (messageCode == HttpURLConnection.HTTP_OK) {
+            if (!hasCity) {
+                throw new JSONException("No value for " + OWM_CITY);
+            }
+            if (!hasList) {
+                throw new JSONException("No value for " + OWM_LIST);
+            }
+        }
+        return messageCode;
+    }
+
+    private static void readStep(JsonReader reader, Handler handler)
+            throws IOException, JSONException {
+        long time = 0;
+        double temperature = 0;
+        double humidity = 0;
+        int weatherId = 0;
+        double windSpeed = 0;
+        double windDirection = 0;
+        int found = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_TIME.equals(name)) {
+                time = reader.nextLong();
+                found |= STEP_TIME;
+            } else if (OWM_MAIN.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String mainName = reader.nextName();
+                    if (OWM_TEMPERATURE.equals(mainName)) {
+                        temperature = reader.nextDouble();
+                        found |= STEP_TEMPERATURE;
+                    } else if (OWM_HUMIDITY.equals(mainName)) {
+                        humidity = reader.nextDouble();
+                        found |= STEP_HUMIDITY;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WEATHER.equals(name)) {
+                // Only the first condition is kept, as for the daily forecast
+                reader.beginArray();
+                if (reader.hasNext()) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (OWM_WEATHER_ID.equals(reader.nextName())) {
+                            weatherId = reader.nextInt();
+                            found |= STEP_WEATHER_ID;
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                while (reader.hasNext()) {
+                    reader.skipValue();
+                }
+                reader.endArray();
+            } else if (OWM_WIND.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String windName = reader.nextName();
+                    if (OWM_WINDSPEED.equals(windName)) {
+                        windSpeed = reader.nextDouble();
+                        found |= STEP_WIND_SPEED;
+                    } else if (OWM_WIND_DIRECTION.equals(windName)) {
+                        windDirection = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (found != STEP_COMPLETE) {
+            throw new JSONException("Incomplete forecast for " + time);
+        }
+        handler.onStep(time, temperature, humidity, weatherId, windSpeed, windDirection);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Remembers, per forecast request, the HTTP validators (ETag and Last-Modified) and a hash of
+ * the body of the last response we stored.  Repeat syncs use these to send a conditional request
+ * and to recognize a response identical to the one already in the database.
+ *
+ * Entries are only valid for the day they were stored on: the same body received on a later day
+ * maps to different dates, so it has to be stored again.
+ */
+class HttpValidatorCache {
+    private static final String PREFS_NAME = "http_validators";
+
+    private static final String SUFFIX_ETAG = ".etag";
+    private static final String SUFFIX_LAST_MODIFIED = ".last_modified";
+    private static final String SUFFIX_BODY_HASH = ".body_hash";
+    private static final String SUFFIX_JULIAN_DAY = ".julian_day";
+
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+
+    static class Entry {
+        final String eTag;
+        final String lastModified;
+        final String bodyHash;
+        final int julianDay;
+
+        Entry(String eTag, String lastModified, String bodyHash, int julianDay) {
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.bodyHash = bodyHash;
+            this.julianDay = julianDay;
+        }
+    }
+
+    private final SharedPreferences mPrefs;
+
+    HttpValidatorCache(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @param key identifies the request, e.g. its URL
+     * @param julianDay the current Julian day
+     * @return the validators stored for the request on that day, or null if there are none
+     */
+    Entry get(String key, int julianDay) {
+        if (mPrefs.getInt(key + SUFFIX_JULIAN_DAY, -1) != julianDay) {
+            return null;
+        }
+        String bodyHash = mPrefs.getString(key + SUFFIX_BODY_HASH, null);
+        if (bodyHash == null) {
+            return null;
+        }
+        return new Entry(mPrefs.getString(key + SUFFIX_ETAG, null),
+                mPrefs.getString(key + SUFFIX_LAST_MODIFIED, null),
+                bodyHash,
+                julianDay);
+    }
+
+    void put(String key, Entry entry) {
+        mPrefs.edit()
+                .putString(key + SUFFIX_ETAG, entry.eTag)
+                .putString(key + SUFFIX_LAST_MODIFIED, entry.lastModified)
+                .putString(key + SUFFIX_BODY_HASH, entry.bodyHash)
+                .putInt(key + SUFFIX_JULIAN_DAY, entry.julianDay)
+                .apply();
+    }
+
+    void remove(String key) {
+        mPrefs.edit()
+                .remove(key + SUFFIX_ETAG)
+                .remove(key + SUFFIX_LAST_MODIFIED)
+                .remove(key + SUFFIX_BODY_HASH)
+                .remove(key + SUFFIX_JULIAN_DAY)
+                .apply();
+    }
+
+    static MessageDigest newBodyDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device ships SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] digest) {
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.net.Uri;
+
+import com.example.android.sunshine.app.BuildConfig;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.security.DigestInputStream;
+
+/**
+ * A single request to one of OpenWeatherMap's forecast endpoints, made conditional on what was
+ * stored last time and timed for {@link SyncMetrics}.
+ *
+ * The daily and the hourly forecast are requested the same way and only differ in the endpoint
+ * and the parser, so {@link ForecastFetcher} and {@link HourlyForecastFetcher} both go through
+ * here.  The body is hashed as it is read, so a response identical to the stored one is noticed
+ * even when the server ignores the validators.  A request is made once; {@link #disconnect()}
+ * must be called when done with it.
+ */
+class OwmRequest {
+
+    // Possible parameters are avaiable at OWM's forecast API page, at
+    // http://openweathermap.org/API#forecast
+    private static final String QUERY_PARAM = "q";
+    private static final String LAT_PARAM = "lat";
+    private static final String LON_PARAM = "lon";
+    private static final String FORMAT_PARAM = "mode";
+    private static final String UNITS_PARAM = "units";
+    private static final String APPID_PARAM = "APPID";
+
+    // How the request went, for SyncMetrics.  Stages that were never reached stay at -1.
+    int httpStatus = -1;
+    long dnsMillis = -1;
+    long connectMillis = -1;
+    long firstByteMillis = -1;
+    long parseMillis = -1;
+    long bytesRead;
+
+    // Key and validators to remember once the result is stored.  Null validators mean the
+    // cached ones must be forgotten.
+    final String validatorKey;
+    HttpValidatorCache.Entry validators;
+
+    private HttpURLConnection mConnection;
+    private HttpValidatorCache.Entry mSentValidators;
+    private CountingInputStream mCountingStream;
+    private DigestInputStream mDigestStream;
+    private long mReadStartedAt;
+
+    /**
+     * @param baseUrl the endpoint, up to and including the "?"
+     * @param latitude latitude to query by instead of the location setting, or null
+     * @param longitude longitude to query by instead of the location setting, or null
+     * @param extraParams any further parameters, as names each followed by its value
+     */
+    OwmRequest(String baseUrl, String locationSetting, String latitude, String longitude,
+               String... extraParams) {
+        Uri.Builder uriBuilder = Uri.parse(baseUrl).buildUpon();
+
+        // Instead of always building the query based off of the location string, we want to
+        // potentially build a query using a lat/lon value. This will be the case when we are
+        // syncing based off of a new location from the Place Picker API. Otherwise, the
+        // weather service may not understand the location address provided by the Place
+        // Picker API and the user could end up with no weather! The horror!
+        if (latitude != null && longitude != null) {
+            uriBuilder.appendQueryParameter(LAT_PARAM, latitude)
+                    .appendQueryParameter(LON_PARAM, longitude);
+        } else {
+            uriBuilder.appendQueryParameter(QUERY_PARAM, locationSetting);
+        }
+
+        uriBuilder.appendQueryParameter(FORMAT_PARAM, "json")
+                .appendQueryParameter(UNITS_PARAM, "metric");
+        for (int i = 0; i + 1 < extraParams.length; i += 2) {
+            uriBuilder.appendQueryParameter(extraParams[i], extraParams[i + 1]);
+        }
+        validatorKey = uriBuilder
+                .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
+                .build().toString();
+    }
+
+    /**
+     * Sends the request, conditional on the given validators if there are any.
+     *
+     * @param cached validators from the last response stored for this request, or null
+     * @return the body to parse, or null if the server says the stored response is still
+     * current, in which case the cached validators are the ones to keep
+     */
+    InputStream send(HttpValidatorCache.Entry cached) throws IOException {
+        mSentValidators = cached;
+        URL url = new URL(validatorKey);
+
+        // Resolve the host up front, only so DNS can be timed apart from the connection.  The
+        // result is cached, so the connection doesn't look it up a second time.
+        long stageStart = SyncMetrics.Record.now();
+        InetAddress.getByName(url.getHost());
+        dnsMillis = SyncMetrics.Record.now() - stageStart;
+
+        mConnection = (HttpURLConnection) url.openConnection();
+        mConnection.setRequestMethod("GET");
+        if (cached != null) {
+            if (cached.eTag != null) {
+                mConnection.setRequestProperty("If-None-Match", cached.eTag);
+            }
+            if (cached.lastModified != null) {
+                mConnection.setRequestProperty("If-Modified-Since", cached.lastModified);
+            }
+        }
+        stageStart = SyncMetrics.Record.now();
+        mConnection.connect();
+        connectMillis = SyncMetrics.Record.now() - stageStart;
+
+        stageStart = SyncMetrics.Record.now();
+        httpStatus = mConnection.getResponseCode();
+        firstByteMillis = SyncMetrics.Record.now() - stageStart;
+
+        if (cached != null && httpStatus == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            validators = cached;
+            return null;
+        }
+
+        // An empty stream shows up as an IOException, which is handled the same way as a
+        // failed connection.
+        mCountingStream = new CountingInputStream(mConnection.getInputStream());
+        mDigestStream = new DigestInputStream(mCountingStream, HttpValidatorCache.newBodyDigest());
+        mReadStartedAt = SyncMetrics.Record.now();
+        return mDigestStream;
+    }
+
+    /**
+     * Records how long the body took, once the parser is done with it, whether or not it
+     * parsed.  The body is read as it is parsed, so the two can't be timed apart.
+     */
+    void finishReading() {
+        if (mCountingStream != null) {
+            parseMillis = SyncMetrics.Record.now() - mReadStartedAt;
+            bytesRead = mCountingStream.mCount;
+        }
+    }
+
+    /**
+     * Takes the validators of the body just parsed as the ones to remember.  Only call it once
+     * the body parsed fine.
+     *
+     * @param julianDay the day the body is stored for
+     * @return true if the body is the same as the one stored last time, so there is nothing to
+     * store
+     */
+    boolean acceptBody(int julianDay) {
+        String bodyHash = HttpValidatorCache.toHex(mDigestStream.getMessageDigest().digest());
+        validators = new HttpValidatorCache.Entry(
+                mConnection.getHeaderField("ETag"),
+                mConnection.getHeaderField("Last-Modified"),
+                bodyHash,
+                julianDay);
+        return mSentValidators != null && bodyHash.equals(mSentValidators.bodyHash);
+    }
+
+    void disconnect() {
+        if (mConnection != null) {
+            mConnection.disconnect();
+        }
+    }
+
+    /**
+     * Counts the bytes of the response body as they are read.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long byteCount) throws IOException {
+            long skipped = super.skip(byteCount);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+}
@@ -2,24 +2,20 @@ package com.example.android.sunshine.app.sync;
 
 import android.accounts.Account;
 import android.accounts.AccountManager;
-import android.annotation.SuppressLint;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
 import android.content.ContentResolver;
-import android.content.ContentUris;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
 import android.content.res.Resources;
-import android.database.Cursor;
+import android.database.SQLException;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
@@ -29,37 +25,32 @@ import android.support.v4.app.TaskStackBuilder;
 import android.text.format.Time;
 import android.util.Log;
 
-import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.ArtCache;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastBatch;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+import com.example.android.sunshine.app.data.HourlyBatch;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.wearable.Asset;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
@@ -71,20 +62,23 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL/3;
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
-
-
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-    private static final int INDEX_SHORT_DESC = 3;
+    // Upper bound on the number of forecasts, daily or hourly, downloaded at the same time
+    private static final int MAX_CONCURRENT_FETCHES = 3;
+    // How long each consumer of a new forecast gets before it is given up on
+    private static final long WATCH_FACE_TIMEOUT_MS = 10 * 1000;
+    private static final long WIDGETS_TIMEOUT_MS = 2 * 1000;
+    private static final long MUZEI_TIMEOUT_MS = 2 * 1000;
+    private static final long NOTIFICATION_TIMEOUT_MS = 15 * 1000;
+
+    // The watch face's data item, holding every forecast day from today on.  These must match
+    // the watch face's ForecastStore.
+    private static final String WATCH_PATH_FORECAST = "/FORECAST";
+    private static final String WATCH_KEY_VERSION = "version";
+    private static final String WATCH_KEY_DATES = "dates";
+    private static final String WATCH_KEY_WEATHER_IDS = "weatherIds";
+    private static final String WATCH_KEY_HIGHS = "highs";
+    private static final String WATCH_KEY_LOWS = "lows";
+    private static final int WATCH_DATA_VERSION = 1;
 
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID,  LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID})
@@ -97,9 +91,42 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int LOCATION_STATUS_INVALID = 4;
 
     private GoogleApiClient mGoogleApiClient;
+    private final HttpValidatorCache mValidatorCache;
+    private final SyncMetrics mMetrics;
+    private final SyncFanOut mFanOut;
 
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
+        mValidatorCache = new HttpValidatorCache(context);
+        mMetrics = new SyncMetrics(context);
+
+        mFanOut = new SyncFanOut(context, mMetrics);
+        mFanOut.add(SyncMetrics.STAGE_WATCH_FACE, WATCH_FACE_TIMEOUT_MS,
+                new SyncFanOut.Consumer() {
+                    @Override
+                    public void onForecastUpdated(ForecastSnapshot snapshot) {
+                        updateWatchface(snapshot);
+                    }
+                });
+        mFanOut.add(SyncMetrics.STAGE_WIDGETS, WIDGETS_TIMEOUT_MS, new SyncFanOut.Consumer() {
+            @Override
+            public void onForecastUpdated(ForecastSnapshot snapshot) {
+                updateWidgets();
+            }
+        });
+        mFanOut.add(SyncMetrics.STAGE_MUZEI, MUZEI_TIMEOUT_MS, new SyncFanOut.Consumer() {
+            @Override
+            public void onForecastUpdated(ForecastSnapshot snapshot) {
+                updateMuzei();
+            }
+        });
+        mFanOut.add(SyncMetrics.STAGE_NOTIFICATION, NOTIFICATION_TIMEOUT_MS,
+                new SyncFanOut.Consumer() {
+                    @Override
+                    public void onForecastUpdated(ForecastSnapshot snapshot) {
+                        notifyWeather(snapshot);
+                    }
+                });
 
         mGoogleApiClient = new GoogleApiClient.Builder(getContext())
                 .addConnectionCallbacks(new GoogleApiClient.ConnectionCallbacks() {
@@ -124,326 +151,237 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     @Override
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
         Log.d(LOG_TAG, "Starting sync");
+        SyncMetrics.Record metrics = mMetrics.begin();
+        try {
+            performSync(metrics);
+        } finally {
+            metrics.finish();
+            mMetrics.save(metrics);
+        }
+    }
 
-        // We no longer need just the location String, but also potentially the latitude and
-        // longitude, in case we are syncing based on a new Place Picker API result.
+    private void performSync(SyncMetrics.Record metrics) {
+        // The preferred location always comes first, followed by the other saved locations.
         Context context = getContext();
-        String locationQuery = Utility.getPreferredLocation(context);
-        String locationLatitude = String.valueOf(Utility.getLocationLatitude(context));
-        String locationLongitude = String.valueOf(Utility.getLocationLongitude(context));
+        List<Utility.SyncLocation> locations = Utility.getSyncLocations(context);
+        List<ForecastFetcher> fetchers = new ArrayList<ForecastFetcher>(locations.size());
+        List<HourlyForecastFetcher> hourlyFetchers =
+                new ArrayList<HourlyForecastFetcher>(locations.size());
+        for (Utility.SyncLocation location : locations) {
+            // Place Picker locations are queried by their coordinates rather than their address
+            fetchers.add(new ForecastFetcher(context, mValidatorCache, location.setting,
+                    location.latitude, location.longitude));
+            hourlyFetchers.add(new HourlyForecastFetcher(context, mValidatorCache,
+                    location.setting, location.latitude, location.longitude));
+        }
 
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
+        metrics.count(SyncMetrics.COUNT_LOCATIONS, fetchers.size());
+        long stageStart = SyncMetrics.Record.now();
+        List<ForecastFetcher.Result> results = fetchForecasts(fetchers, hourlyFetchers);
+        metrics.time(SyncMetrics.STAGE_FETCH, stageStart);
+        if (results.isEmpty()) {
+            // Interrupted before anything came back
+            return;
+        }
+        for (ForecastFetcher.Result result : results) {
+            metrics.addFetch(SyncMetrics.FETCH_DAILY, result.request,
+                    result.forecast == null ? 0 : result.forecast.size());
+            metrics.addFetch(SyncMetrics.FETCH_HOURLY, result.hourly.request,
+                    result.hourly.forecast == null ? 0 : result.hourly.forecast.size());
+        }
 
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
+        boolean preferredLocationStored;
+        stageStart = SyncMetrics.Record.now();
+        try {
+            preferredLocationStored = storeForecasts(results, metrics);
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Error storing forecasts", e);
+            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            return;
+        } finally {
+            metrics.time(SyncMetrics.STAGE_STORE, stageStart);
+        }
 
-        String format = "json";
-        String units = "metric";
-        int numDays = 14;
+        if (preferredLocationStored) {
+            // Download whatever art of the selected pack is missing while we are known to be
+            // online, so the notification and widgets can read it off disk.  That happens on
+            // the art cache's own thread, as it can take far longer than the sync.
+            ArtCache.updateInBackground(context, false);
 
-        try {
-            // Construct the URL for the OpenWeatherMap query
-            // Possible parameters are avaiable at OWM's forecast API page, at
-            // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
-            final String QUERY_PARAM = "q";
-            final String LAT_PARAM = "lat";
-            final String LON_PARAM = "lon";
-            final String FORMAT_PARAM = "mode";
-            final String UNITS_PARAM = "units";
-            final String DAYS_PARAM = "cnt";
-            final String APPID_PARAM = "APPID";
-
-            Uri.Builder uriBuilder = Uri.parse(FORECAST_BASE_URL).buildUpon();
-
-            // Instead of always building the query based off of the location string, we want to
-            // potentially build a query using a lat/lon value. This will be the case when we are
-            // syncing based off of a new location from the Place Picker API. So we need to check
-            // if we have a lat/lon to work with, and use those when we do. Otherwise, the weather
-            // service may not understand the location address provided by the Place Picker API
-            // and the user could end up with no weather! The horror!
-            if (Utility.isLocationLatLonAvailable(context)) {
-                uriBuilder.appendQueryParameter(LAT_PARAM, locationLatitude)
-                        .appendQueryParameter(LON_PARAM, locationLongitude);
-            } else {
-                uriBuilder.appendQueryParameter(QUERY_PARAM, locationQuery);
-            }
+            // The watch face, widgets, Muzei and the notification are updated after the sync,
+            // once for any number of syncs in quick succession
+            mFanOut.requestDispatch();
+        }
+        // The location status only ever describes the preferred location.
+        ForecastFetcher.Result preferred = results.get(0);
+        if (preferred.status != LOCATION_STATUS_UNKNOWN) {
+            setLocationStatus(getContext(), preferred.status);
+        }
+    }
 
-            Uri builtUri = uriBuilder.appendQueryParameter(FORMAT_PARAM, format)
-                    .appendQueryParameter(UNITS_PARAM, units)
-                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
-                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
-                    .build();
-
-            URL url = new URL(builtUri.toString());
-
-            // Create the request to OpenWeatherMap, and open the connection
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-            if (inputStream == null) {
-                // Nothing to do.
-                return;
+    /**
+     * Runs the given fetches, at most {@link #MAX_CONCURRENT_FETCHES} at a time.  The daily
+     * forecasts are queued first, and each hourly forecast ends up in the result of the daily
+     * one at the same position.
+     *
+     * @return the results, in the same order as the fetchers.  Empty if the sync was interrupted.
+     */
+    private List<ForecastFetcher.Result> fetchForecasts(
+            List<ForecastFetcher> fetchers, List<HourlyForecastFetcher> hourlyFetchers) {
+        List<ForecastFetcher.Result> results =
+                new ArrayList<ForecastFetcher.Result>(fetchers.size());
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(MAX_CONCURRENT_FETCHES, fetchers.size() + hourlyFetchers.size()));
+        try {
+            List<Future<ForecastFetcher.Result>> daily =
+                    new ArrayList<Future<ForecastFetcher.Result>>(fetchers.size());
+            for (ForecastFetcher fetcher : fetchers) {
+                daily.add(executor.submit(fetcher));
             }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
+            List<Future<HourlyForecastFetcher.Result>> hourly =
+                    new ArrayList<Future<HourlyForecastFetcher.Result>>(hourlyFetchers.size());
+            for (HourlyForecastFetcher fetcher : hourlyFetchers) {
+                hourly.add(executor.submit(fetcher));
             }
-
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
+            for (int i = 0; i < daily.size(); i++) {
+                ForecastFetcher.Result result = daily.get(i).get();
+                result.hourly = hourly.get(i).get();
+                results.add(result);
             }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Error ", e);
-            // If the code didn't successfully get the weather data, there's no point in attempting
-            // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+        } catch (InterruptedException e) {
+            Log.d(LOG_TAG, "Sync interrupted");
+            Thread.currentThread().interrupt();
+            results.clear();
+        } catch (ExecutionException e) {
+            // The fetchers handle their own failures, so this is a programming error
+            throw new RuntimeException(e.getCause());
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
-                }
-            }
+            executor.shutdownNow();
         }
-        return;
+        return results;
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
+     * Stores every fetched forecast in a single transaction, so observers of the weather and
+     * location tables hear about all of them at once, and moves days that are over into the
+     * history.
      *
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * @return true if a new forecast for the preferred location (the first result) was stored
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
-
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
-
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
-
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
-
-        final String OWM_MESSAGE_CODE = "cod";
-
-        try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-            Context context = getContext();
-
-            // do we have an error?
-            if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
-                }
+    private boolean storeForecasts(List<ForecastFetcher.Result> results,
+                                   SyncMetrics.Record metrics) {
+        ArrayList<ForecastBatch> forecasts = new ArrayList<ForecastBatch>(results.size());
+        ArrayList<HourlyBatch> hourlyForecasts = new ArrayList<HourlyBatch>(results.size());
+        int julianStartDay = -1;
+        for (ForecastFetcher.Result result : results) {
+            HourlyBatch hourly = result.hourly.forecast;
+            if (hourly != null && !hourly.isEmpty()) {
+                hourlyForecasts.add(hourly);
             }
-
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
-
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
-
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
-
-            Time dayTime = new Time();
-            dayTime.setToNow();
-
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
-            double high=0;
-            double low=0;
-
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
-
-
-
-                String description;
-                int weatherId;
-
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
-
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
-
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
-                ContentValues weatherValues = new ContentValues();
-
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-                cVVector.add(weatherValues);
+            if (result.forecast == null || result.forecast.isEmpty()) {
+                continue;
             }
+            julianStartDay = result.julianStartDay;
+            forecasts.add(result.forecast);
+        }
 
-            int inserted = 0;
-            // add to database
-            if ( cVVector.size() > 0 ) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[]{Long.toString(dayTime.setJulianDay(julianStartDay-1))});
+        int stored = 0;
+        int hoursStored = 0;
+        if (!forecasts.isEmpty() || !hourlyForecasts.isEmpty()) {
+            Bundle extras = new Bundle();
+            extras.putParcelableArrayList(WeatherContract.EXTRA_FORECASTS, forecasts);
+            extras.putParcelableArrayList(WeatherContract.EXTRA_HOURLY_FORECASTS,
+                    hourlyForecasts);
+            if (!forecasts.isEmpty()) {
+                // move days that are over into the history, which only keeps so many months
+                Time dayTime = new Time();
+                extras.putLong(WeatherContract.EXTRA_DELETE_BEFORE,
+                        dayTime.setJulianDay(julianStartDay));
+                extras.putInt(WeatherContract.EXTRA_HISTORY_MONTHS,
+                        Utility.getHistoryMonths(getContext()));
+            }
 
-                updateWatchface();
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
+            Bundle result = getContext().getContentResolver().call(
+                    WeatherContract.BASE_CONTENT_URI, WeatherContract.METHOD_STORE_FORECASTS,
+                    null, extras);
+            if (result != null) {
+                stored = result.getInt(WeatherContract.EXTRA_ROWS_STORED);
+                hoursStored = result.getInt(WeatherContract.EXTRA_HOURS_STORED);
+                metrics.duration(SyncMetrics.STAGE_STORE_LOCATIONS,
+                        result.getLong(WeatherContract.EXTRA_LOCATION_MILLIS));
+                metrics.duration(SyncMetrics.STAGE_STORE_WEATHER,
+                        result.getLong(WeatherContract.EXTRA_WEATHER_MILLIS));
+                metrics.duration(SyncMetrics.STAGE_STORE_HOURLY,
+                        result.getLong(WeatherContract.EXTRA_HOURLY_MILLIS));
+                metrics.duration(SyncMetrics.STAGE_STORE_HISTORY,
+                        result.getLong(WeatherContract.EXTRA_HISTORY_MILLIS));
             }
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+        }
+        metrics.count(SyncMetrics.COUNT_ROWS_STORED, stored);
+        metrics.count(SyncMetrics.COUNT_HOURS_STORED, hoursStored);
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+        // Only now that the forecasts are stored can their validators be trusted.
+        for (ForecastFetcher.Result result : results) {
+            rememberValidators(result.request);
+            rememberValidators(result.hourly.request);
         }
+
+        Log.d(LOG_TAG, "Sync Complete. " + stored + " Stored for "
+                + results.size() + " locations");
+        ForecastBatch preferred = results.get(0).forecast;
+        return preferred != null && !preferred.isEmpty();
     }
 
-    private static Asset createAssetFromBitmap(Bitmap bitmap){
-        final ByteArrayOutputStream byteStream=new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.PNG,100,byteStream);
-        return Asset.createFromBytes(byteStream.toByteArray());
+    private void rememberValidators(OwmRequest request) {
+        if (request.validators != null) {
+            mValidatorCache.put(request.validatorKey, request.validators);
+        } else {
+            mValidatorCache.remove(request.validatorKey);
+        }
     }
-    public void updateWatchface(){
-        Context context = getContext();
-        String locationQuery = Utility.getPreferredLocation(context);
-        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-
-        Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-        double high=0 ;  
-        double low=0 ;
-        Bitmap largeIcon;
-        Resources resources = context.getResources();
-        int artResourceId=0;
-
-        if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            high = cursor.getDouble(INDEX_MAX_TEMP);
-            low = cursor.getDouble(INDEX_MIN_TEMP);
-            artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+
+    /**
+     * Sends the forecast from today on to the watch face, unless it already has it.
+     *
+     * The watch keeps the whole forecast, so it can move on to the next day at midnight by
+     * itself.  It bundles its own art, so only condition codes and temperatures are sent, and
+     * the hash of what was last delivered is kept so an unchanged forecast is not sent again.
+     */
+    private void updateWatchface(ForecastSnapshot snapshot) {
+        final Context context = getContext();
+        if (snapshot == null || snapshot.getDays().isEmpty()) {
+            return;
+        }
+
+        List<ForecastSnapshot.Day> days = snapshot.getDays();
+        long[] dates = new long[days.size()];
+        ArrayList<Integer> weatherIds = new ArrayList<Integer>(days.size());
+        float[] highs = new float[days.size()];
+        float[] lows = new float[days.size()];
+        for (int i = 0; i < days.size(); i++) {
+            ForecastSnapshot.Day day = days.get(i);
+            dates[i] = day.date;
+            weatherIds.add(day.weatherId);
+            highs[i] = (float) day.high;
+            lows[i] = (float) day.low;
+        }
+
+        final int dataHash = getWatchDataHash(dates, weatherIds, highs, lows);
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        final String lastWatchDataKey = context.getString(R.string.pref_last_watch_data);
+        if (prefs.contains(lastWatchDataKey) && prefs.getInt(lastWatchDataKey, 0) == dataHash) {
+            Log.v(LOG_TAG, "Watch face is up to date");
+            return;
         }
 
-        largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
-        Asset asset = createAssetFromBitmap(largeIcon);
-        Log.v("myTag", "data: "+Double.toString(high)+" "+Double.toString(low));
         if(mGoogleApiClient.isConnected()) {
             Log.d("mGoogleApiClient", "Connection to wearable exist!");
-            PutDataMapRequest putRequest = PutDataMapRequest.create("/CONFIG");
-            putRequest.getDataMap().putDouble("high", high);
-            putRequest.getDataMap().putDouble("low", low);
-            putRequest.getDataMap().putAsset("weatherImage", asset);
+            PutDataMapRequest putRequest = PutDataMapRequest.create(WATCH_PATH_FORECAST);
+            putRequest.getDataMap().putInt(WATCH_KEY_VERSION, WATCH_DATA_VERSION);
+            putRequest.getDataMap().putLongArray(WATCH_KEY_DATES, dates);
+            putRequest.getDataMap().putIntegerArrayList(WATCH_KEY_WEATHER_IDS, weatherIds);
+            putRequest.getDataMap().putFloatArray(WATCH_KEY_HIGHS, highs);
+            putRequest.getDataMap().putFloatArray(WATCH_KEY_LOWS, lows);
             putRequest.setUrgent();
 
             PutDataRequest request=putRequest.asPutDataRequest();
@@ -455,6 +393,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                                 Log.v("mGoogleApiClient", "data could not be sent");
                             } else {
                                 Log.v("myTag", "data sent");
+                                prefs.edit().putInt(lastWatchDataKey, dataHash).apply();
                             }
                         }
                     });
@@ -464,6 +403,16 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
+    private static int getWatchDataHash(long[] dates, List<Integer> weatherIds, float[] highs,
+                                        float[] lows) {
+        int hash = WATCH_DATA_VERSION;
+        hash = 31 * hash + Arrays.hashCode(dates);
+        hash = 31 * hash + weatherIds.hashCode();
+        hash = 31 * hash + Arrays.hashCode(highs);
+        hash = 31 * hash + Arrays.hashCode(lows);
+        return hash;
+    }
+
     private void updateWidgets() {
         Context context = getContext();
         // Setting the package ensures that only components in our app will receive the broadcast
@@ -482,7 +431,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
-    private void notifyWeather() {
+    private void notifyWeather(ForecastSnapshot snapshot) {
         Context context = getContext();
         //checking the last update and notify if it' the first of the day
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
@@ -497,46 +446,23 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
             if (System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS) {
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
-                String locationQuery = Utility.getPreferredLocation(context);
-
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
+                ForecastSnapshot.Day today = snapshot == null ? null : snapshot.getToday();
 
-                // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-                if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
+                if (today != null) {
+                    int weatherId = today.weatherId;
+                    double high = today.high;
+                    double low = today.low;
+                    String desc = today.description;
 
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
                     int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-                    String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
-
-                    // On Honeycomb and higher devices, we can retrieve the size of the large icon
-                    // Prior to that, we use a fixed size
-                    @SuppressLint("InlinedApi")
-                    int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-                    @SuppressLint("InlinedApi")
-                    int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-
-                    // Retrieve the large icon
-                    Bitmap largeIcon;
-                    try {
-                        largeIcon = Glide.with(context)
-                                .load(artUrl)
-                                .asBitmap()
-                                .error(artResourceId)
-                                .fitCenter()
-                                .into(largeIconWidth, largeIconHeight).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
+
+                    // Retrieve the large icon, already sized for it, from the art cache.  Only
+                    // the bundled art pack, or one not downloaded yet, uses the resource.
+                    Bitmap largeIcon = ArtCache.getBitmap(context, weatherId,
+                            ArtCache.SIZE_NOTIFICATION);
+                    if (largeIcon == null) {
                         largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
                     }
                     String title = context.getString(R.string.app_name);
@@ -584,60 +510,10 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                     editor.putLong(lastNotificationKey, System.currentTimeMillis());
                     editor.commit();
                 }
-                cursor.close();
             }
         }
     }
 
-    /**
-     * Helper method to handle insertion of a new location in the weather database.
-     *
-     * @param locationSetting The location string used to request updates from the server.
-     * @param cityName A human-readable city name, e.g "Mountain View"
-     * @param lat the latitude of the city
-     * @param lon the longitude of the city
-     * @return the row ID of the added location.
-     */
-    long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
-
-        // First, check if the location with this city name exists in the db
-        Cursor locationCursor = getContext().getContentResolver().query(
-                WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
-                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
-                new String[]{locationSetting},
-                null);
-
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
-        }
-
-        locationCursor.close();
-        // Wait, that worked?  Yes!
-        return locationId;
-    }
 
     /**
      * Helper method to schedule the sync adapter periodic execution
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.PowerManager;
+import android.os.Process;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tells everything that shows the forecast that a sync stored a new one, after the sync is over.
+ *
+ * Syncs only ask for a dispatch.  Requests that arrive within {@link #COALESCE_DELAY_MS} of each
+ * other are handled once, so a burst of syncs (a settings change followed by the periodic sync,
+ * say) redraws the widgets and messages the watch a single time.  A dispatch reads one
+ * {@link ForecastSnapshot} of the preferred location and hands it to every consumer, on a small
+ * pool of threads, waiting for each no longer than its own timeout.  A slow consumer, such as
+ * the notification waiting on its large icon, therefore never holds up the sync or the others.
+ *
+ * The sync's own wake lock is gone by the time the dispatch runs, so the fan-out holds a partial
+ * wake lock of its own from the first request until the dispatch is over.  It times out on its
+ * own after the longest a dispatch can take, should anything go wrong in between.
+ */
+class SyncFanOut {
+    private static final String LOG_TAG = SyncFanOut.class.getSimpleName();
+
+    // How long to wait for more syncs before dispatching
+    static final long COALESCE_DELAY_MS = 2000;
+
+    // Upper bound on the number of consumers running at the same time
+    private static final int MAX_CONCURRENT_CONSUMERS = 4;
+    // Idle consumer threads are let go after this long, as syncs are hours apart
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    // Slack on top of the coalescing delay and the slowest consumer before the wake lock lets go
+    // by itself
+    private static final long WAKE_LOCK_MARGIN_MS = 5000;
+
+    private static final int MSG_DISPATCH = 1;
+
+    interface Consumer {
+        /**
+         * Called on a worker thread with the forecast for the preferred location, or null if
+         * there is none.  Should stop early if the thread is interrupted, which happens once
+         * the consumer's timeout is up.
+         */
+        void onForecastUpdated(ForecastSnapshot snapshot);
+    }
+
+    private static class Entry {
+        final String stage;
+        final long timeoutMillis;
+        final Consumer consumer;
+
+        Entry(String stage, long timeoutMillis, Consumer consumer) {
+            this.stage = stage;
+            this.timeoutMillis = timeoutMillis;
+            this.consumer = consumer;
+        }
+    }
+
+    private final Context mContext;
+    private final SyncMetrics mMetrics;
+    private final List<Entry> mEntries = new ArrayList<Entry>();
+    private final ThreadPoolExecutor mExecutor;
+    private final Handler mHandler;
+    // Keeps the device awake between a request and the end of its dispatch
+    private final PowerManager.WakeLock mWakeLock;
+    // The longest timeout of any consumer
+    private long mMaxTimeoutMillis;
+    // Number of dispatches requested since the last one started
+    private int mRequests;
+
+    SyncFanOut(Context context, SyncMetrics metrics) {
+        mContext = context;
+        mMetrics = metrics;
+
+        mExecutor = new ThreadPoolExecutor(MAX_CONCURRENT_CONSUMERS, MAX_CONCURRENT_CONSUMERS,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        mExecutor.allowCoreThreadTimeOut(true);
+
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        mWakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, LOG_TAG);
+        // However many syncs ask, one release after the dispatch lets go
+        mWakeLock.setReferenceCounted(false);
+
+        HandlerThread thread = new HandlerThread(LOG_TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                if (msg.what == MSG_DISPATCH) {
+                    dispatch();
+                }
+            }
+        };
+    }
+
+    /**
+     * Adds a consumer, timed in the fan-out's metrics as the given stage.  Consumers must all be
+     * added before the first dispatch is requested.
+     */
+    void add(String stage, long timeoutMillis, Consumer consumer) {
+        mEntries.add(new Entry(stage, timeoutMillis, consumer));
+        mMaxTimeoutMillis = Math.max(mMaxTimeoutMillis, timeoutMillis);
+    }
+
+    /**
+     * Asks for the consumers to be told about a new forecast, once no more syncs have asked for
+     * {@link #COALESCE_DELAY_MS}.  Returns right away, but keeps the device awake until the
+     * dispatch is over.
+     */
+    synchronized void requestDispatch() {
+        // Acquiring again only pushes the timeout back, as the lock is not reference counted
+        mWakeLock.acquire(COALESCE_DELAY_MS + mMaxTimeoutMillis + WAKE_LOCK_MARGIN_MS);
+        mRequests++;
+        mHandler.removeMessages(MSG_DISPATCH);
+        mHandler.sendEmptyMessageDelayed(MSG_DISPATCH, COALESCE_DELAY_MS);
+    }
+
+    private synchronized int takeRequests() {
+        int requests = mRequests;
+        mRequests = 0;
+        return requests;
+    }
+
+    /**
+     * Lets the device sleep, unless another sync asked for a dispatch while this one ran.
+     */
+    private synchronized void releaseWakeLock() {
+        if (mRequests == 0 && mWakeLock.isHeld()) {
+            mWakeLock.release();
+        }
+    }
+
+    private void dispatch() {
+        try {
+            dispatchToConsumers();
+        } finally {
+            releaseWakeLock();
+        }
+    }
+
+    private void dispatchToConsumers() {
+        SyncMetrics.Record metrics = mMetrics.beginFanOut();
+        metrics.count(SyncMetrics.COUNT_SYNCS_COALESCED, takeRequests());
+
+        final ForecastSnapshot snapshot =
+                ForecastSnapshot.get(mContext, Utility.getPreferredLocation(mContext));
+
+        long startedAt = SyncMetrics.Record.now();
+        List<Future<Long>> futures = new ArrayList<Future<Long>>(mEntries.size());
+        for (final Entry entry : mEntries) {
+            futures.add(mExecutor.submit(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    long consumerStartedAt = SyncMetrics.Record.now();
+                    entry.consumer.onForecastUpdated(snapshot);
+                    return SyncMetrics.Record.now() - consumerStartedAt;
+                }
+            }));
+        }
+
+        // Every consumer was started together, so each one's deadline counts from the start
+        for (int i = 0; i < futures.size(); i++) {
+            Entry entry = mEntries.get(i);
+            Future<Long> future = futures.get(i);
+            long remaining = startedAt + entry.timeoutMillis - SyncMetrics.Record.now();
+            try {
+                metrics.duration(entry.stage,
+                        future.get(Math.max(remaining, 0), TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                Log.w(LOG_TAG, entry.stage + " took longer than " + entry.timeoutMillis + "ms");
+                future.cancel(true);
+                metrics.duration(entry.stage, entry.timeoutMillis);
+                metrics.count(SyncMetrics.COUNT_TIMED_OUT, 1);
+            } catch (ExecutionException e) {
+                // One consumer failing must not keep the others from being told
+                Log.e(LOG_TAG, "Error updating " + entry.stage, e.getCause());
+            } catch (InterruptedException e) {
+                // The dispatch thread is never interrupted, but don't leave consumers running
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        metrics.finish();
+        mMetrics.save(metrics);
+    }
+}
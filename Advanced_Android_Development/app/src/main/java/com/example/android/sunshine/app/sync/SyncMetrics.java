@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.PrintWriter;
+
+/**
+ * Timings and counters for the stages of a sync, kept for the last {@link #CAPACITY} syncs.
+ *
+ * Each sync is recorded as one JSON object in a ring buffer stored in SharedPreferences, so the
+ * history survives the process.  The post-sync fan-out runs after the sync is over, so it is
+ * recorded as an object of its own, with a "type" of {@link #TYPE_FAN_OUT}.  It can be read with
+ * {@code adb shell dumpsys activity service .sync.SunshineSyncService}, which needs the DUMP
+ * permission and so is only available to developers.
+ */
+class SyncMetrics {
+    private static final String LOG_TAG = SyncMetrics.class.getSimpleName();
+
+    private static final String PREFS_NAME = "sync_metrics";
+    private static final String KEY_NEXT = "next";
+    private static final String KEY_SLOT_PREFIX = "slot.";
+
+    static final int CAPACITY = 32;
+
+    // What a record describes
+    static final String TYPE_SYNC = "sync";
+    static final String TYPE_FAN_OUT = "fan_out";
+
+    // Stages of a sync, timed in milliseconds
+    static final String STAGE_TOTAL = "total";
+    static final String STAGE_FETCH = "fetch";
+    static final String STAGE_STORE = "store";
+    // Parts of the store stage, timed by the provider
+    static final String STAGE_STORE_LOCATIONS = "store_locations";
+    static final String STAGE_STORE_WEATHER = "store_weather";
+    static final String STAGE_STORE_HOURLY = "store_hourly";
+    static final String STAGE_STORE_HISTORY = "store_history";
+
+    // Consumers of a fan-out, timed in milliseconds.  A consumer that timed out is recorded at
+    // its timeout.
+    static final String STAGE_WATCH_FACE = "watch_face";
+    static final String STAGE_WIDGETS = "widgets";
+    static final String STAGE_MUZEI = "muzei";
+    static final String STAGE_NOTIFICATION = "notification";
+
+    // What a fetch requested
+    static final String FETCH_DAILY = "daily";
+    static final String FETCH_HOURLY = "hourly";
+
+    // Counters.  The last two are only kept for fan-outs.
+    static final String COUNT_LOCATIONS = "locations";
+    static final String COUNT_BYTES = "bytes";
+    static final String COUNT_ROWS_PARSED = "rows_parsed";
+    static final String COUNT_ROWS_STORED = "rows_stored";
+    static final String COUNT_HOURS_PARSED = "hours_parsed";
+    static final String COUNT_HOURS_STORED = "hours_stored";
+    static final String COUNT_SYNCS_COALESCED = "syncs_coalesced";
+    static final String COUNT_TIMED_OUT = "timed_out";
+
+    private final SharedPreferences mPrefs;
+
+    SyncMetrics(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Starts recording a sync.  Nothing is kept until the record is passed to {@link #save}.
+     */
+    Record begin() {
+        return new Record(TYPE_SYNC);
+    }
+
+    /**
+     * Starts recording a post-sync fan-out.
+     */
+    Record beginFanOut() {
+        return new Record(TYPE_FAN_OUT);
+    }
+
+    synchronized void save(Record record) {
+        int next = mPrefs.getInt(KEY_NEXT, 0);
+        mPrefs.edit()
+                .putString(KEY_SLOT_PREFIX + next, record.mJson.toString())
+                .putInt(KEY_NEXT, (next + 1) % CAPACITY)
+                .apply();
+    }
+
+    /**
+     * Writes the recorded syncs, oldest first, one JSON object per line.
+     */
+    synchronized void dump(PrintWriter writer) {
+        int next = mPrefs.getInt(KEY_NEXT, 0);
+        for (int i = 0; i < CAPACITY; i++) {
+            String record = mPrefs.getString(KEY_SLOT_PREFIX + ((next + i) % CAPACITY), null);
+            if (record != null) {
+                writer.println(record);
+            }
+        }
+    }
+
+    /**
+     * The timings and counters of a single sync.
+     */
+    static class Record {
+        private final JSONObject mJson = new JSONObject();
+        private final JSONObject mTimings = new JSONObject();
+        private final JSONObject mCounters = new JSONObject();
+        private final JSONArray mFetches = new JSONArray();
+        private final long mStartedAt = SystemClock.elapsedRealtime();
+        private final String mType;
+
+        private Record(String type) {
+            mType = type;
+            try {
+                mJson.put("type", type);
+                mJson.put("started", System.currentTimeMillis());
+                mJson.put("timings", mTimings);
+                mJson.put("counters", mCounters);
+                mJson.put("fetches", mFetches);
+            } catch (JSONException e) {
+                // Only thrown for null keys
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * @return the time to pass to {@link #time} once the stage is over
+         */
+        static long now() {
+            return SystemClock.elapsedRealtime();
+        }
+
+        /**
+         * Records how long a stage took since the given {@link #now()}.
+         */
+        void time(String stage, long startedAt) {
+            duration(stage, SystemClock.elapsedRealtime() - startedAt);
+        }
+
+        /**
+         * Records how long a stage took, when it was timed elsewhere.
+         */
+        void duration(String stage, long millis) {
+            put(mTimings, stage, millis);
+        }
+
+        void count(String counter, long amount) {
+            put(mCounters, counter, mCounters.optLong(counter) + amount);
+        }
+
+        /**
+         * Records what a single request for a location's forecast did.
+         *
+         * @param type {@link #FETCH_DAILY} or {@link #FETCH_HOURLY}
+         * @param rows the days or steps parsed off it that are to be stored
+         */
+        void addFetch(String type, OwmRequest request, int rows) {
+            JSONObject fetch = new JSONObject();
+            put(fetch, "type", type);
+            put(fetch, "http_status", request.httpStatus);
+            put(fetch, "dns", request.dnsMillis);
+            put(fetch, "connect", request.connectMillis);
+            put(fetch, "first_byte", request.firstByteMillis);
+            put(fetch, "read_and_parse", request.parseMillis);
+            put(fetch, "bytes", request.bytesRead);
+            put(fetch, "rows", rows);
+            mFetches.put(fetch);
+
+            count(COUNT_BYTES, request.bytesRead);
+            count(FETCH_DAILY.equals(type) ? COUNT_ROWS_PARSED : COUNT_HOURS_PARSED, rows);
+        }
+
+        /**
+         * Marks the sync or fan-out as over and logs a summary.
+         */
+        void finish() {
+            time(STAGE_TOTAL, mStartedAt);
+            Log.d(LOG_TAG, mType + " timings " + mTimings + " counters " + mCounters);
+        }
+
+        private static void put(JSONObject json, String key, long value) {
+            try {
+                json.put(key, value);
+            } catch (JSONException e) {
+                // Only thrown for null keys
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private static void put(JSONObject json, String key, String value) {
+            try {
+                json.put(key, value);
+            } catch (JSONException e) {
+                // Only thrown for null keys
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
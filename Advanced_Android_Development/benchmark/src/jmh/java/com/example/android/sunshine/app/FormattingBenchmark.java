@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * The work behind the {@link Utility} helpers the forecast list and the detail view call for
+ * every day they bind, done by the same {@link DisplayFormat} the app uses, with the format
+ * strings from the app's resources.  Only the resource lookups that feed it need a Context, and
+ * those happen once per preference change.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class FormattingBenchmark {
+
+    private static final String STRINGS = "/strings.xml";
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+
+    // Every code OWM documents, so each branch of the lookup is taken
+    private static final int[] WEATHER_IDS = {
+            200, 201, 202, 210, 211, 212, 221, 230, 231, 232,
+            300, 301, 302, 310, 311, 312, 313, 314, 321,
+            500, 501, 502, 503, 504, 511, 520, 521, 522, 531,
+            600, 601, 602, 611, 612, 615, 616, 620, 621, 622,
+            701, 711, 721, 731, 741, 751, 761, 762, 771, 781,
+            800, 801, 802, 803, 804,
+            900, 901, 902, 903, 904, 905, 906, 951, 952
+    };
+
+    @Param({"true", "false"})
+    public boolean metric;
+
+    private final long mNow = 1443520800000L;
+    private DisplayFormat mFormat;
+    private int mDay;
+
+    @Setup
+    public void createFormat() throws Exception {
+        Map<String, String> strings = readStrings();
+        mFormat = new DisplayFormat(metric, TimeZone.getTimeZone("America/Los_Angeles"),
+                strings.get("format_temperature"),
+                strings.get(metric ? "format_wind_kmh" : "format_wind_mph"),
+                strings.get("format_full_friendly_date"),
+                strings.get("today"),
+                strings.get("tomorrow"));
+    }
+
+    @Benchmark
+    public void weatherConditions(Blackhole blackhole) {
+        for (int weatherId : WEATHER_IDS) {
+            int condition = WeatherConditions.getCondition(weatherId);
+            blackhole.consume(condition);
+            blackhole.consume(WeatherConditions.getArtName(condition));
+            blackhole.consume(WeatherConditions.getImageUrl(weatherId));
+        }
+    }
+
+    @Benchmark
+    public String formatTemperature() {
+        mDay = (mDay + 1) % 14;
+        return mFormat.formatTemperature(9.1 + mDay * 1.37);
+    }
+
+    @Benchmark
+    public String formattedWind() {
+        mDay = (mDay + 1) % 14;
+        return mFormat.formatWind(3.1f + mDay, mDay * 37 % 360);
+    }
+
+    /**
+     * A list row's date, over the 14 days of a forecast: today's long form, day names and
+     * short dates.
+     */
+    @Benchmark
+    public String friendlyDayString() {
+        mDay = (mDay + 1) % 14;
+        return mFormat.getFriendlyDayString(mNow + mDay * DAY_IN_MILLIS, mNow, true);
+    }
+
+    /**
+     * The detail view's date, e.g. "Wednesday, June 24".
+     */
+    @Benchmark
+    public String fullFriendlyDayString() {
+        mDay = (mDay + 1) % 14;
+        long date = mNow + mDay * DAY_IN_MILLIS;
+        return mFormat.formatFullFriendlyDate(mFormat.getDayName(date, mNow), date);
+    }
+
+    /**
+     * Reads the app's strings.xml, unescaped the way aapt does for the strings used here.
+     */
+    private static Map<String, String> readStrings() throws Exception {
+        InputStream in = FormattingBenchmark.class.getResourceAsStream(STRINGS);
+        if (in == null) {
+            throw new IOException("Missing " + STRINGS);
+        }
+        NodeList nodes;
+        try {
+            nodes = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in)
+                    .getElementsByTagName("string");
+        } finally {
+            in.close();
+        }
+        Map<String, String> strings = new HashMap<String, String>();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Element element = (Element) nodes.item(i);
+            // The text of any xliff:g placeholders is part of the content
+            strings.put(element.getAttribute("name"), unescape(element.getTextContent()));
+        }
+        return strings;
+    }
+
+    private static String unescape(String value) {
+        StringBuilder result = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                continue;
+            }
+            if (c != '\\' || i + 1 == value.length()) {
+                result.append(c);
+                continue;
+            }
+            char escaped = value.charAt(++i);
+            if (escaped == 'u' && i + 4 < value.length()) {
+                result.append((char) Integer.parseInt(value.substring(i + 1, i + 5), 16));
+                i += 4;
+            } else if (escaped == 'n') {
+                result.append('\n');
+            } else {
+                result.append(escaped);
+            }
+        }
+        return result.toString();
+    }
+}
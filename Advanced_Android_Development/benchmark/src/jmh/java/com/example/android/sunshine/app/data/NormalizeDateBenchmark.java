@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link WeatherContract#normalizeDate} runs for every row the provider stores or is queried
+ * by date for.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class NormalizeDateBenchmark {
+
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+
+    // A fixed start, so runs on different days measure the same dates
+    private long mDate = 1443520800000L;
+
+    @Benchmark
+    public long normalizeDate() {
+        // Walk through a fortnight in uneven steps so the result is never the same twice
+        mDate += 7 * 60 * 60 * 1000 + 12345;
+        if (mDate > 1443520800000L + 14 * DAY_IN_MILLIS) {
+            mDate = 1443520800000L;
+        }
+        return WeatherContract.normalizeDate(mDate);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import com.example.android.sunshine.app.data.ForecastBatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses a recorded 14 day OpenWeatherMap response, the way a sync does for every location.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class ForecastJsonParserBenchmark {
+
+    private static final String RESPONSE = "/forecast_daily_14.json";
+
+    private byte[] mResponse;
+
+    /**
+     * Fills a ForecastBatch like the sync adapter's collector, minus the date arithmetic.
+     */
+    private static class BatchHandler implements ForecastJsonParser.Handler {
+        final ForecastBatch mForecast = new ForecastBatch();
+
+        @Override
+        public void onCity(String cityName, double lat, double lon) {
+            mForecast.setLocation("94043", cityName, lat, lon);
+        }
+
+        @Override
+        public void onDay(int day, double pressure, int humidity, double windSpeed,
+                          double windDirection, double high, double low, String description,
+                          int weatherId) {
+            mForecast.add(day, weatherId, description, high, low, humidity, pressure,
+                    windSpeed, windDirection);
+        }
+    }
+
+    @Setup
+    public void readResponse() throws IOException {
+        InputStream in = ForecastJsonParserBenchmark.class.getResourceAsStream(RESPONSE);
+        if (in == null) {
+            throw new IOException("Missing " + RESPONSE);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            mResponse = out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Benchmark
+    public ForecastBatch parse() throws Exception {
+        BatchHandler handler = new BatchHandler();
+        ForecastJsonParser.parse(new ByteArrayInputStream(mResponse), handler);
+        return handler.mForecast;
+    }
+}
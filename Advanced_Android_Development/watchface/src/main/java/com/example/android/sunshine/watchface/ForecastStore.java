@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.watchface;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.google.android.gms.wearable.DataMap;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * The forecast the phone last sent, from the day it was sent on, kept in a small file.
+ *
+ * With the whole forecast on the watch, the face moves on to the next day at midnight by itself
+ * instead of showing yesterday's weather until the phone syncs again.  The file survives the
+ * watch face being restarted, so it does not have to wait for the phone either.
+ */
+class ForecastStore {
+    private static final String LOG_TAG = ForecastStore.class.getSimpleName();
+
+    // The phone's data item.  These must match SunshineSyncAdapter.
+    static final String PATH_FORECAST = "/FORECAST";
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_DATES = "dates";
+    private static final String KEY_WEATHER_IDS = "weatherIds";
+    private static final String KEY_HIGHS = "highs";
+    private static final String KEY_LOWS = "lows";
+    private static final int VERSION = 1;
+
+    private static final String FILE_NAME = "forecast";
+    private static final int FILE_VERSION = 1;
+
+    // Days are usually this long, but the one DST starts or ends on is an hour off
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000;
+    private static final long LONGEST_DAY_IN_MILLIS = DAY_IN_MILLIS + 60 * 60 * 1000;
+
+    private final AtomicFile mFile;
+
+    // Start of each day in milliseconds, in order, with the forecast for it
+    private long[] mDates = new long[0];
+    private int[] mWeatherIds = new int[0];
+    private float[] mHighs = new float[0];
+    private float[] mLows = new float[0];
+
+    ForecastStore(Context context) {
+        mFile = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+        load();
+    }
+
+    /**
+     * @return the day the given time falls on, or -1 if the forecast does not cover it
+     */
+    int findDay(long timeInMillis) {
+        for (int i = mDates.length - 1; i >= 0; i--) {
+            if (mDates[i] <= timeInMillis) {
+                return timeInMillis - mDates[i] < LONGEST_DAY_IN_MILLIS ? i : -1;
+            }
+        }
+        return -1;
+    }
+
+    int getWeatherId(int day) {
+        return mWeatherIds[day];
+    }
+
+    float getHigh(int day) {
+        return mHighs[day];
+    }
+
+    float getLow(int day) {
+        return mLows[day];
+    }
+
+    /**
+     * Replaces the forecast with the one in a {@link #PATH_FORECAST} data item, and saves it.
+     *
+     * @return false if the item could not be read, in which case the forecast is unchanged
+     */
+    boolean update(DataMap map) {
+        if (map.getInt(KEY_VERSION) != VERSION) {
+            Log.w(LOG_TAG, "Unknown forecast version " + map.getInt(KEY_VERSION));
+            return false;
+        }
+        long[] dates = map.getLongArray(KEY_DATES);
+        ArrayList<Integer> weatherIds = map.getIntegerArrayList(KEY_WEATHER_IDS);
+        float[] highs = map.getFloatArray(KEY_HIGHS);
+        float[] lows = map.getFloatArray(KEY_LOWS);
+        if (dates == null || weatherIds == null || highs == null || lows == null
+                || weatherIds.size() != dates.length
+                || highs.length != dates.length || lows.length != dates.length) {
+            Log.w(LOG_TAG, "Incomplete forecast");
+            return false;
+        }
+
+        int[] ids = new int[weatherIds.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = weatherIds.get(i);
+        }
+        mDates = dates;
+        mWeatherIds = ids;
+        mHighs = highs;
+        mLows = lows;
+        save();
+        return true;
+    }
+
+    private void load() {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(mFile.openRead());
+            if (in.readInt() != FILE_VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            long[] dates = new long[count];
+            int[] weatherIds = new int[count];
+            float[] highs = new float[count];
+            float[] lows = new float[count];
+            for (int i = 0; i < count; i++) {
+                dates[i] = in.readLong();
+                weatherIds[i] = in.readInt();
+                highs[i] = in.readFloat();
+                lows[i] = in.readFloat();
+            }
+            mDates = dates;
+            mWeatherIds = weatherIds;
+            mHighs = highs;
+            mLows = lows;
+        } catch (FileNotFoundException e) {
+            // Nothing has been received yet
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not read the stored forecast", e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Nothing was written, so there is nothing to lose
+                }
+            }
+        }
+    }
+
+    private void save() {
+        FileOutputStream out = null;
+        try {
+            out = mFile.startWrite();
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(FILE_VERSION);
+            data.writeInt(mDates.length);
+            for (int i = 0; i < mDates.length; i++) {
+                data.writeLong(mDates[i]);
+                data.writeInt(mWeatherIds[i]);
+                data.writeFloat(mHighs[i]);
+                data.writeFloat(mLows[i]);
+            }
+            data.flush();
+            mFile.finishWrite(out);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not store the forecast", e);
+            if (out != null) {
+                mFile.failWrite(out);
+            }
+        }
+    }
+}
@@ -0,0 +1,422 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.watchface;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.text.format.Time;
+
+/**
+ * Draws the watch face.
+ *
+ * The face only changes with the minute, the date, the battery level, the weather and the screen
+ * shape, so all of its text is formatted into reusable buffers and measured when one of those
+ * changes.  Drawing a frame only compares the time against what is already laid out, and
+ * allocates nothing.
+ *
+ * Everything but the time is drawn into an off-screen layer, one for interactive mode and one for
+ * ambient mode, which is only redrawn when what is on it changes.  A frame is then a blit of the
+ * layer with the time drawn over it.
+ */
+class WatchFaceRenderer {
+    private static final char DEGREE = '\u00B0';
+
+    private final Paint mBackgroundPaint;
+    private final Paint mTextPaint;
+    private final Paint mHourPaint;
+    private final Paint mMinutePaint;
+    private final Paint mHighPaint;
+    private final Paint mLowPaint;
+    private final Paint mDatePaint;
+    private final Paint mDateAmbientPaint;
+    private final Paint mBatteryPaint;
+
+    // Indexed by Time.weekDay and Time.month
+    private final String[] mDayNames;
+    private final String[] mMonthNames;
+
+    private final float mYOffset;
+    private final float mYOffsetAmbient;
+
+    private boolean mAmbient;
+    private boolean mLowBitAmbient;
+    private Bitmap mWeatherIcon;
+
+    // Everything but the time, for interactive and ambient mode.  The ambient layer is drawn
+    // without anti-aliasing on low-bit displays, so it remembers which way it was drawn.
+    private final Canvas mLayerCanvas = new Canvas();
+    private Bitmap mInteractiveLayer;
+    private boolean mInteractiveLayerValid;
+    private Bitmap mAmbientLayer;
+    private boolean mAmbientLayerValid;
+    private boolean mAmbientLayerLowBit;
+
+    // Everything drawn is kept here as text, and refreshed only when it changes
+    private final StringBuilder mBuilder = new StringBuilder(32);
+    private final Text mTime = new Text();
+    private final Text mDate = new Text();
+    private final Text mAmbientDate = new Text();
+    private final Text mBattery = new Text();
+    private final Text mHigh = new Text();
+    private final Text mLow = new Text();
+    // The hour is the start of mTime and the minute, with its colon, the rest
+    private int mHourLength;
+
+    private int mMinute = -1;
+    private int mHour = -1;
+    private int mYearDay = -1;
+    private int mYear = -1;
+    private int mBatteryLevel = Integer.MIN_VALUE;
+
+    // Layout, worked out whenever the text, text sizes or surface change
+    private boolean mLayoutValid;
+    private float mCenterX = Float.NaN;
+    private float mHourX;
+    private float mMinuteX;
+    private float mDateX;
+    private float mLineStartX;
+    private float mLineEndX;
+    private float mHighX;
+    private float mLowX;
+    private float mIconX;
+    private float mBatteryX;
+    private float mAmbientTimeX;
+    private float mAmbientDateX;
+
+    /**
+     * Reusable text buffer.
+     */
+    private static class Text {
+        char[] chars = new char[16];
+        int length;
+
+        void set(StringBuilder builder) {
+            length = builder.length();
+            if (chars.length < length) {
+                chars = new char[length];
+            }
+            builder.getChars(0, length, chars, 0);
+        }
+
+        float measure(Paint paint) {
+            return paint.measureText(chars, 0, length);
+        }
+    }
+
+    WatchFaceRenderer(Context context) {
+        Resources resources = context.getResources();
+        mYOffset = resources.getDimension(R.dimen.digital_y_offset);
+        mYOffsetAmbient = resources.getDimension(R.dimen.digital_y_offset_ambient);
+
+        Typeface regular = Typeface.createFromAsset(resources.getAssets(), "Roboto-Regular.ttf");
+        Typeface light = Typeface.createFromAsset(resources.getAssets(), "Roboto-Light.ttf");
+
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(resources.getColor(R.color.background));
+
+        mTextPaint = createTextPaint(resources.getColor(R.color.digital_text), regular);
+        mHourPaint = createTextPaint(resources.getColor(R.color.digital_text), regular);
+        mMinutePaint = createTextPaint(resources.getColor(R.color.digital_text), light);
+        mHighPaint = createTextPaint(resources.getColor(R.color.watchface_date), regular);
+        mHighPaint.setFakeBoldText(true);
+        mLowPaint = createTextPaint(resources.getColor(R.color.watchface_date), light);
+        mDatePaint = createTextPaint(resources.getColor(R.color.watchface_date), regular);
+        mDateAmbientPaint = createTextPaint(resources.getColor(R.color.digital_text), regular);
+        mBatteryPaint = createTextPaint(resources.getColor(R.color.watchface_date), regular);
+
+        mDayNames = new String[] {
+                resources.getString(R.string.sunday),
+                resources.getString(R.string.monday),
+                resources.getString(R.string.tuesday),
+                resources.getString(R.string.wednesday),
+                resources.getString(R.string.thursday),
+                resources.getString(R.string.friday),
+                resources.getString(R.string.saturday)
+        };
+        mMonthNames = new String[] {
+                resources.getString(R.string.january),
+                resources.getString(R.string.february),
+                resources.getString(R.string.march),
+                resources.getString(R.string.april),
+                resources.getString(R.string.may),
+                resources.getString(R.string.june),
+                resources.getString(R.string.july),
+                resources.getString(R.string.august),
+                resources.getString(R.string.september),
+                resources.getString(R.string.october),
+                resources.getString(R.string.november),
+                resources.getString(R.string.december)
+        };
+
+        setTemperatures("30", "10");
+    }
+
+    private static Paint createTextPaint(int textColor, Typeface typeface) {
+        Paint paint = new Paint();
+        paint.setColor(textColor);
+        paint.setTypeface(typeface);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+
+    /**
+     * Applies the text sizes for the screen shape.
+     */
+    void setRound(Resources resources, boolean isRound) {
+        float hourSize = resources.getDimension(isRound
+                ? R.dimen.digital_text_size_round : R.dimen.digital_text_size);
+        float dateSize = resources.getDimension(isRound
+                ? R.dimen.digital_text_size_round_2 : R.dimen.digital_text_size_2);
+        float batterySize = resources.getDimension(isRound
+                ? R.dimen.digital_text_size_round_3 : R.dimen.digital_text_size_3);
+        float tempSize = resources.getDimension(isRound
+                ? R.dimen.digital_text_size_round_4 : R.dimen.digital_text_size_4);
+
+        mTextPaint.setTextSize(hourSize);
+        mHourPaint.setTextSize(hourSize);
+        mMinutePaint.setTextSize(hourSize);
+        mHighPaint.setTextSize(tempSize);
+        mLowPaint.setTextSize(tempSize);
+        mDatePaint.setTextSize(dateSize);
+        mDateAmbientPaint.setTextSize(dateSize);
+        mBatteryPaint.setTextSize(batterySize);
+        mLayoutValid = false;
+        invalidateLayers();
+    }
+
+    void setSurfaceSize(int width) {
+        mCenterX = width / 2f;
+        mLayoutValid = false;
+        invalidateLayers();
+    }
+
+    void setAmbient(boolean ambient, boolean lowBitAmbient) {
+        mAmbient = ambient;
+        mLowBitAmbient = lowBitAmbient;
+        if (lowBitAmbient) {
+            mTextPaint.setAntiAlias(!ambient);
+        }
+    }
+
+    void setBackgroundColor(int color) {
+        mBackgroundPaint.setColor(color);
+        mInteractiveLayerValid = false;
+    }
+
+    /**
+     * @return true if the level shown has changed
+     */
+    boolean setBatteryLevel(int level) {
+        if (level == mBatteryLevel) {
+            return false;
+        }
+        mBatteryLevel = level;
+        mBuilder.setLength(0);
+        mBuilder.append(level).append('%');
+        mBattery.set(mBuilder);
+        mLayoutValid = false;
+        mInteractiveLayerValid = false;
+        return true;
+    }
+
+    void setTemperatures(String high, String low) {
+        mBuilder.setLength(0);
+        mBuilder.append(high).append(DEGREE);
+        mHigh.set(mBuilder);
+        mBuilder.setLength(0);
+        mBuilder.append(low).append(DEGREE);
+        mLow.set(mBuilder);
+        mLayoutValid = false;
+        mInteractiveLayerValid = false;
+    }
+
+    /**
+     * @param icon the icon, already {@link WeatherIconLoader#ICON_SIZE} square
+     */
+    void setWeatherIcon(Bitmap icon) {
+        mWeatherIcon = icon;
+        mInteractiveLayerValid = false;
+    }
+
+    /**
+     * Frees the layers.  They are drawn again if the renderer is used afterwards.
+     */
+    void release() {
+        mLayerCanvas.setBitmap(null);
+        if (mInteractiveLayer != null) {
+            mInteractiveLayer.recycle();
+            mInteractiveLayer = null;
+        }
+        if (mAmbientLayer != null) {
+            mAmbientLayer.recycle();
+            mAmbientLayer = null;
+        }
+        invalidateLayers();
+    }
+
+    private void invalidateLayers() {
+        mInteractiveLayerValid = false;
+        mAmbientLayerValid = false;
+    }
+
+    void draw(Canvas canvas, Rect bounds, Time time) {
+        if (time.minute != mMinute || time.hour != mHour
+                || time.yearDay != mYearDay || time.year != mYear) {
+            updateTime(time);
+        }
+        if (bounds.exactCenterX() != mCenterX) {
+            mCenterX = bounds.exactCenterX();
+            mLayoutValid = false;
+            invalidateLayers();
+        }
+        if (!mLayoutValid) {
+            layout();
+        }
+
+        if (!mAmbient) {
+            if (!mInteractiveLayerValid) {
+                mInteractiveLayer = prepareLayer(mInteractiveLayer, bounds);
+                drawInteractiveLayer(mLayerCanvas, bounds);
+                mInteractiveLayerValid = true;
+            }
+            canvas.drawBitmap(mInteractiveLayer, 0, 0, null);
+
+            // Draw H:MM, and the divider under the date, which is as wide as the time
+            canvas.drawText(mTime.chars, 0, mHourLength, mHourX, mYOffset, mHourPaint);
+            canvas.drawText(mTime.chars, mHourLength, mTime.length - mHourLength, mMinuteX,
+                    mYOffset, mMinutePaint);
+            canvas.drawLine(mLineStartX, mYOffset + 80, mLineEndX, mYOffset + 80, mDatePaint);
+        } else {
+            if (!mAmbientLayerValid || mAmbientLayerLowBit != mLowBitAmbient) {
+                mAmbientLayer = prepareLayer(mAmbientLayer, bounds);
+                drawAmbientLayer(mLayerCanvas);
+                mAmbientLayerValid = true;
+                mAmbientLayerLowBit = mLowBitAmbient;
+            }
+            canvas.drawBitmap(mAmbientLayer, 0, 0, null);
+
+            canvas.drawText(mTime.chars, 0, mTime.length, mAmbientTimeX, mYOffsetAmbient,
+                    mTextPaint);
+        }
+    }
+
+    /**
+     * Points {@link #mLayerCanvas} at the layer, first replacing it if it does not match the
+     * bounds.
+     */
+    private Bitmap prepareLayer(Bitmap layer, Rect bounds) {
+        if (layer == null
+                || layer.getWidth() != bounds.width() || layer.getHeight() != bounds.height()) {
+            if (layer != null) {
+                layer.recycle();
+            }
+            layer = Bitmap.createBitmap(bounds.width(), bounds.height(), Bitmap.Config.ARGB_8888);
+        }
+        mLayerCanvas.setBitmap(layer);
+        return layer;
+    }
+
+    private void drawInteractiveLayer(Canvas canvas, Rect bounds) {
+        canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
+
+        canvas.drawText(mBattery.chars, 0, mBattery.length, mBatteryX, mYOffset / 3,
+                mBatteryPaint);
+        canvas.drawText(mDate.chars, 0, mDate.length, mDateX, mYOffset + 50, mDatePaint);
+        canvas.drawText(mHigh.chars, 0, mHigh.length, mHighX, mYOffset + 150, mHighPaint);
+        canvas.drawText(mLow.chars, 0, mLow.length, mLowX, mYOffset + 150, mLowPaint);
+        if (mWeatherIcon != null) {
+            canvas.drawBitmap(mWeatherIcon, mIconX, mYOffset + 100, mDatePaint);
+        }
+    }
+
+    private void drawAmbientLayer(Canvas canvas) {
+        canvas.drawColor(Color.BLACK);
+
+        mDateAmbientPaint.setAntiAlias(!mLowBitAmbient);
+        canvas.drawText(mAmbientDate.chars, 0, mAmbientDate.length, mAmbientDateX,
+                mYOffsetAmbient + 70, mDateAmbientPaint);
+    }
+
+    private void updateTime(Time time) {
+        StringBuilder builder = mBuilder;
+
+        builder.setLength(0);
+        builder.append(time.hour);
+        mHourLength = builder.length();
+        builder.append(':');
+        appendTwoDigits(builder, time.minute);
+        mTime.set(builder);
+
+        if (time.yearDay != mYearDay || time.year != mYear) {
+            builder.setLength(0);
+            builder.append(mDayNames[time.weekDay]).append(", ")
+                    .append(mMonthNames[time.month]).append(' ')
+                    .append(time.monthDay).append(' ')
+                    .append(time.year);
+            mDate.set(builder);
+
+            builder.setLength(0);
+            builder.append(time.monthDay).append('.');
+            appendTwoDigits(builder, time.month + 1);
+            mAmbientDate.set(builder);
+            invalidateLayers();
+        }
+
+        mMinute = time.minute;
+        mHour = time.hour;
+        mYearDay = time.yearDay;
+        mYear = time.year;
+        mLayoutValid = false;
+    }
+
+    private static void appendTwoDigits(StringBuilder builder, int value) {
+        if (value < 10) {
+            builder.append('0');
+        }
+        builder.append(value);
+    }
+
+    private void layout() {
+        float timeWidth = mTime.measure(mHourPaint);
+        mHourX = mCenterX - timeWidth / 2;
+        mMinuteX = mHourX + mHourPaint.measureText(mTime.chars, 0, mHourLength);
+
+        mDateX = mCenterX - mDate.measure(mDatePaint) / 2;
+
+        float textWidth = mTime.measure(mTextPaint);
+        mLineStartX = mCenterX - textWidth / 6;
+        mLineEndX = mLineStartX + textWidth / 3;
+
+        // The high is centered on its number, without the degree sign
+        float highWidth = mHigh.measure(mHighPaint);
+        mHighX = mCenterX - mHighPaint.measureText(mHigh.chars, 0, mHigh.length - 1) / 2;
+        mLowX = mCenterX + highWidth / 2 + 20;
+        mIconX = mCenterX - highWidth / 2 - 90;
+
+        mBatteryX = mCenterX - mBattery.measure(mBatteryPaint) / 2;
+
+        mAmbientTimeX = mCenterX - textWidth / 2;
+        mAmbientDateX = mCenterX - mAmbientDate.measure(mDatePaint) / 2;
+        mLayoutValid = true;
+    }
+}
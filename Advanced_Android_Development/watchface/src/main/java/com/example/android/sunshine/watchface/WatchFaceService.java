@@ -22,13 +22,8 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
-import android.os.AsyncTask;
 import android.os.BatteryManager;
 import android.os.Bundle;
 import android.os.Handler;
@@ -45,7 +40,6 @@ import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.PendingResult;
 import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.common.data.FreezableUtils;
-import com.google.android.gms.wearable.Asset;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
@@ -55,7 +49,6 @@ import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
 import com.google.android.gms.wearable.Wearable;
 
-import java.io.InputStream;
 import java.lang.ref.WeakReference;
 import java.util.List;
 import java.util.TimeZone;
@@ -104,24 +97,13 @@ public class WatchFaceService extends CanvasWatchFaceService {
 
     private class Engine extends CanvasWatchFaceService.Engine implements DataApi.DataListener,
             GoogleApiClient.ConnectionCallbacks,
-            GoogleApiClient.OnConnectionFailedListener{
+            GoogleApiClient.OnConnectionFailedListener, WeatherIconLoader.Listener {
         final Handler mUpdateTimeHandler = new EngineHandler(this);
         boolean mRegisteredTimeZoneReceiver = false;
-        Paint mBackgroundPaint;
-
-        Paint mHourPaint;
-        Paint mMinutePaint;
-        Paint mHighPaint;
-        Paint mLowPaint;
-        Paint mDatePaint;
-
-        Paint mTextPaint;
-        Paint mDateAmbientPaint;
-        Paint mbatteryPaint;
+        WatchFaceRenderer mRenderer;
 
         boolean mAmbient;
         Time mTime;
-        String mdateString;
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
@@ -129,21 +111,33 @@ public class WatchFaceService extends CanvasWatchFaceService {
                 mTime.setToNow();
             }
         };
+        // ACTION_BATTERY_CHANGED is sticky, so this hears the current level as soon as it is
+        // registered and then only when it changes.
+        final BroadcastReceiver mBatteryReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                int batteryLevel = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+                if (mRenderer.setBatteryLevel(batteryLevel)) {
+                    invalidate();
+                }
+            }
+        };
         int mTapCount;
 
-        float mXOffset;
-        float mYOffsetAmbient;
-        float mYOffset;
-        String high="30";
-        String low="10";
-        Bitmap weatherIcon= BitmapFactory.decodeResource(getResources(), R.drawable.art_clear);;
+        WeatherIconLoader mIconLoader;
+        // Art resource for the weather being shown
+        int mWeatherArt = R.drawable.art_clear;
+
+        ForecastStore mForecastStore;
+        // Day of the year whose forecast is shown, or -1 to look it up on the next frame
+        int mForecastYearDay = -1;
+
         /**
          * Whether the display supports fewer bits for each color in ambient mode. When true, we
          * disable anti-aliasing in ambient mode.
          */
         boolean mLowBitAmbient;
         private GoogleApiClient mGoogleApiClient;
-        private static final long TIMEOUT_MS = 100;
 
         @Override
         public void onCreate(SurfaceHolder holder) {
@@ -161,40 +155,10 @@ public class WatchFaceService extends CanvasWatchFaceService {
                     .setShowSystemUiTime(false)
                     .setAcceptsTapEvents(true)
                     .build());
-            Resources resources = WatchFaceService.this.getResources();
-            mYOffset = resources.getDimension(R.dimen.digital_y_offset);
-            mYOffsetAmbient = resources.getDimension(R.dimen.digital_y_offset_ambient);
-
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(resources.getColor(R.color.background));
-
-            mTextPaint = new Paint();
-            mTextPaint = createTextPaint(resources.getColor(R.color.digital_text));
-
-            mHourPaint=new Paint();
-            mHourPaint = createTextPaint(resources.getColor(R.color.digital_text));
-
-            mMinutePaint=new Paint();
-            mMinutePaint = createTextPaint(resources.getColor(R.color.digital_text));
-            mMinutePaint.setTypeface(Typeface.createFromAsset(getResources().getAssets(), "Roboto-Light.ttf"));
-
-            mHighPaint = new Paint();
-            mHighPaint = createTextPaint(resources.getColor(R.color.watchface_date));
-            mHighPaint.setFakeBoldText(true);
-
-            mLowPaint = new Paint();
-            mLowPaint =createTextPaint(resources.getColor(R.color.watchface_date));
-            mLowPaint.setTypeface(Typeface.createFromAsset(getResources().getAssets(), "Roboto-Light.ttf"));
-
-            mDatePaint = new Paint();
-            mDatePaint = createTextPaint(resources.getColor(R.color.watchface_date));
-
-            mDateAmbientPaint = new Paint();
-            mDateAmbientPaint = createTextPaint(resources.getColor(R.color.digital_text));
-
-            mbatteryPaint = new Paint();
-            mbatteryPaint = createTextPaint(resources.getColor(R.color.watchface_date));
-
+            mRenderer = new WatchFaceRenderer(WatchFaceService.this);
+            mForecastStore = new ForecastStore(WatchFaceService.this);
+            mIconLoader = new WeatherIconLoader(WatchFaceService.this.getResources(), this);
+            mIconLoader.load(mWeatherArt);
             mTime = new Time();
         }
 
@@ -203,85 +167,23 @@ public class WatchFaceService extends CanvasWatchFaceService {
             super.onApplyWindowInsets(insets);
 
             // Load resources that have alternate values for round watches.
-            Resources resources = WatchFaceService.this.getResources();
-            boolean isRound = insets.isRound();
-            mXOffset = resources.getDimension(isRound
-                    ? R.dimen.digital_x_offset_round : R.dimen.digital_x_offset);
-            float hourSize = resources.getDimension(isRound
-                    ? R.dimen.digital_text_size_round : R.dimen.digital_text_size);
-            float dateSize = resources.getDimension(isRound
-                    ? R.dimen.digital_text_size_round_2 : R.dimen.digital_text_size_2);
-            float batterySize = resources.getDimension(isRound
-                    ? R.dimen.digital_text_size_round_3 : R.dimen.digital_text_size_3);
-            float tempSize = resources.getDimension(isRound
-                    ? R.dimen.digital_text_size_round_4 : R.dimen.digital_text_size_4);
-
-            mTextPaint.setTextSize(hourSize);
-
-            mHourPaint.setTextSize(hourSize);
-            mMinutePaint.setTextSize(hourSize);
-            mHighPaint.setTextSize(tempSize);
-            mLowPaint.setTextSize(tempSize);
-            mDatePaint.setTextSize(dateSize);
-
-            mDateAmbientPaint.setTextSize(dateSize);
-            mbatteryPaint.setTextSize(batterySize);
+            mRenderer.setRound(WatchFaceService.this.getResources(), insets.isRound());
         }
 
         @Override
-        public void onDraw(Canvas canvas, Rect bounds) {
-
-            IntentFilter iFilter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
-            Intent batteryStatus =  getApplicationContext().registerReceiver(null, iFilter);
-            int batteryLevel = batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
-
-            // Draw the background.
-            if (isInAmbientMode()) {
-                canvas.drawColor(Color.BLACK);
-            } else {
-                canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
-            }
+        public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+            super.onSurfaceChanged(holder, format, width, height);
+            mRenderer.setSurfaceSize(width);
+        }
 
-            // Draw H:MM in ambient mode or H:MM:SS in interactive mode.
+        @Override
+        public void onDraw(Canvas canvas, Rect bounds) {
             mTime.setToNow();
-            String day=getDayWord(mTime.weekDay);
-            String month=getMonthWord(mTime.month);
-            mdateString=day+", "+month+" "+mTime.monthDay+" "+mTime.year;
-            String text = String.format("%d:%02d", mTime.hour, mTime.minute);
-            String hour = String.format("%d", mTime.hour);
-            String minute = String.format(":%02d", mTime.minute);
-
-            String textDate = !mAmbient
-                    ? String.format("%d.%02d.%02d", mTime.monthDay, mTime.month + 1, mTime.year % 100)
-                    : String.format("%d.%02d", mTime.monthDay, mTime.month + 1);
-            String highString=high+(char) 0x00B0 ;
-            String lowString=low+(char) 0x00B0 ;
-            String battery=Integer.toString(batteryLevel)+"%";
-            //scale bitmap
-            int scale = 70;
-            weatherIcon = Bitmap.createScaledBitmap(weatherIcon, scale, scale, true);
-
-
-            if (!mAmbient) {
-                canvas.drawText(battery, bounds.centerX() - mbatteryPaint.measureText(battery) / 2, mYOffset / 3, mbatteryPaint);
-
-                canvas.drawText(hour, bounds.centerX() - (mHourPaint.measureText(text)) / 2, mYOffset, mHourPaint);
-                canvas.drawText(minute, bounds.centerX() - (mHourPaint.measureText(text)) / 2 + mHourPaint.measureText(hour), mYOffset, mMinutePaint);
-
-                canvas.drawText(mdateString, bounds.centerX() - (mDatePaint.measureText(mdateString)) / 2, mYOffset + 50, mDatePaint);
-
-                canvas.drawLine(bounds.centerX() - (mTextPaint.measureText(text)) / 6, mYOffset + 80,
-                        mTextPaint.measureText(text) / 3 + bounds.centerX() - (mTextPaint.measureText(text)) / 6, mYOffset + 80, mDatePaint);
-
-                canvas.drawText(highString, bounds.centerX()-mHighPaint.measureText(high)/2, mYOffset + 150, mHighPaint);
-                canvas.drawText(lowString,bounds.centerX() + mHighPaint.measureText(highString)/2+20, mYOffset + 150, mLowPaint);
-
-                canvas.drawBitmap(weatherIcon, bounds.centerX() - mHighPaint.measureText(highString)/2-90, mYOffset + 100, mDatePaint);
-            }
-            else{
-                canvas.drawText(text, bounds.centerX() - (mTextPaint.measureText(text)) / 2, mYOffsetAmbient, mTextPaint);
-                canvas.drawText(textDate, bounds.centerX() - (mDatePaint.measureText(textDate)) / 2, mYOffsetAmbient + 70, mDateAmbientPaint);
+            if (mTime.yearDay != mForecastYearDay) {
+                // A new day, or a new forecast
+                showForecast();
             }
+            mRenderer.draw(canvas, bounds, mTime);
         }
 
         @Override
@@ -301,9 +203,7 @@ public class WatchFaceService extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             if (mAmbient != inAmbientMode) {
                 mAmbient = inAmbientMode;
-                if (mLowBitAmbient) {
-                    mTextPaint.setAntiAlias(!inAmbientMode);
-                }
+                mRenderer.setAmbient(inAmbientMode, mLowBitAmbient);
                 invalidate();
             }
 
@@ -329,7 +229,7 @@ public class WatchFaceService extends CanvasWatchFaceService {
                 case TAP_TYPE_TAP:
                     // The user has completed the tap gesture.
                     mTapCount++;
-                    mBackgroundPaint.setColor(resources.getColor(mTapCount % 2 == 0 ?
+                    mRenderer.setBackgroundColor(resources.getColor(mTapCount % 2 == 0 ?
                             R.color.background : R.color.background2));
                     break;
             }
@@ -348,15 +248,12 @@ public class WatchFaceService extends CanvasWatchFaceService {
                     for(DataItem item : dataItems){
                         DataMap map=DataMapItem.fromDataItem(item).getDataMap();
                         String path = item.getUri().getPath();
-                        if(path.equals("/CONFIG")) {
-                            high = Integer.toString((int)map.getDouble("high"));
-                            low = Integer.toString((int) map.getDouble("low"));
-                            Asset asset = map.getAsset("weatherImage");
-                            BitmapWorkerTask task = new BitmapWorkerTask();
-                            task.execute(asset);
-
-                            Log.e("myTag", "Data initially retrieved!: "+high+" "+low);
-                            invalidate();
+                        if(path.equals(ForecastStore.PATH_FORECAST)) {
+                            updateForecast(map);
+                            Log.e("myTag", "Data initially retrieved!");
+                        } else if(path.equals(WeatherArt.PATH_WEATHER)) {
+                            updateWeather(map);
+                            Log.e("myTag", "Data initially retrieved!");
                         }
                     }
                 }
@@ -370,59 +267,76 @@ public class WatchFaceService extends CanvasWatchFaceService {
             for(DataEvent event : events) {
                 DataMap map = DataMapItem.fromDataItem(event.getDataItem()).getDataMap();
                 String path = event.getDataItem().getUri().getPath();
-                if(path.equals("/CONFIG")) {
-                    high = Integer.toString((int)map.getDouble("high"));
-                    low = Integer.toString((int) map.getDouble("low"));
-                    Asset asset = map.getAsset("weatherImage");
-                    BitmapWorkerTask task = new BitmapWorkerTask();
-                    task.execute(asset);
-
-                    Log.e("myTag", "Data changed!: "+high+" "+low);
-                    invalidate();
+                if(path.equals(ForecastStore.PATH_FORECAST)) {
+                    updateForecast(map);
+                    Log.e("myTag", "Data changed!");
+                } else if(path.equals(WeatherArt.PATH_WEATHER)) {
+                    updateWeather(map);
+                    Log.e("myTag", "Data changed!");
                 }
 
 
             }
         }
-        class BitmapWorkerTask extends AsyncTask<Asset, Void, Bitmap> {
-            private Asset data;
 
-            // Decode image in background.
-            @Override
-            protected Bitmap doInBackground(Asset... params) {
-                data = params[0];
-                return loadBitmapFromAsset(data);
+        private void updateForecast(DataMap map) {
+            if (mForecastStore.update(map)) {
+                mForecastYearDay = -1;
+                invalidate();
             }
+        }
 
-            // Once complete, see if ImageView is still around and set bitmap.
-            @Override
-            protected void onPostExecute(Bitmap bitmap) {
-                if (bitmap != null) {
-                    weatherIcon=bitmap;
+        /**
+         * Shows the stored forecast for the current day, if there is one.
+         */
+        private void showForecast() {
+            mForecastYearDay = mTime.yearDay;
+            int day = mForecastStore.findDay(System.currentTimeMillis());
+            if (day >= 0) {
+                showWeather(mForecastStore.getWeatherId(day), mForecastStore.getHigh(day),
+                        mForecastStore.getLow(day));
+            }
+        }
 
-                    invalidate();
-                }
+        /**
+         * Handles the single day item sent by older phone apps.  It is only used if there is
+         * no stored forecast for today, since the phone no longer updates it.
+         */
+        private void updateWeather(DataMap map) {
+            if (mForecastStore.findDay(System.currentTimeMillis()) >= 0) {
+                return;
             }
-            public Bitmap loadBitmapFromAsset(Asset asset) {
-                if (asset == null) {
-                    throw new IllegalArgumentException("Asset must be non-null");
-                }
-                ConnectionResult result =
-                        mGoogleApiClient.blockingConnect(TIMEOUT_MS, TimeUnit.MILLISECONDS);
-                if (!result.isSuccess()) {
-                    return null;
-                }
-                // convert asset into a file descriptor and block until it's ready
-                InputStream assetInputStream = Wearable.DataApi.getFdForAsset(
-                        mGoogleApiClient, asset).await().getInputStream();
-                //mGoogleApiClient.disconnect();
-
-                if (assetInputStream == null) {
-                    Log.w("myTag", "Requested an unknown Asset.");
-                    return null;
-                }
-                // decode the stream into a bitmap
-                return BitmapFactory.decodeStream(assetInputStream);
+            String high = Integer.toString((int) map.getDouble(WeatherArt.KEY_HIGH));
+            String low = Integer.toString((int) map.getDouble(WeatherArt.KEY_LOW));
+            mRenderer.setTemperatures(high, low);
+
+            // Items from the oldest phone apps carry an image rather than the condition, so the
+            // current art is kept for those.
+            if (map.getInt(WeatherArt.KEY_VERSION) >= WeatherArt.VERSION) {
+                showArt(map.getInt(WeatherArt.KEY_WEATHER_ID));
+            }
+            invalidate();
+        }
+
+        private void showWeather(int weatherId, double high, double low) {
+            mRenderer.setTemperatures(Integer.toString((int) high), Integer.toString((int) low));
+            showArt(weatherId);
+        }
+
+        private void showArt(int weatherId) {
+            int art = WeatherArt.getArtResource(weatherId);
+            if (art != mWeatherArt) {
+                mWeatherArt = art;
+                mIconLoader.load(art);
+            }
+        }
+
+        @Override
+        public void onIconLoaded(int art, Bitmap icon) {
+            // Drop the art if the weather changed again while it was decoded
+            if (art == mWeatherArt) {
+                mRenderer.setWeatherIcon(icon);
+                invalidate();
             }
         }
 
@@ -439,94 +353,10 @@ public class WatchFaceService extends CanvasWatchFaceService {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
             Wearable.DataApi.removeListener(mGoogleApiClient, this);
             mGoogleApiClient.disconnect();
+            mRenderer.release();
             super.onDestroy();
         }
 
-        private Paint createTextPaint(int textColor) {
-            Paint paint = new Paint();
-            paint.setColor(textColor);
-            paint.setTypeface(Typeface.createFromAsset(getResources().getAssets(), "Roboto-Regular.ttf"));
-            paint.setAntiAlias(true);
-            //paint.setDither(true);
-            //paint.setStyle(Paint.Style.STROKE);
-            //paint.setStrokeWidth(1);
-            return paint;
-        }
-
-        public String getDayWord(int dayNumber){
-            String day="";
-            switch (dayNumber){
-                case 0:
-                    day=getString(R.string.sunday);
-                    break;
-                case 1:
-                    day=getString(R.string.monday);
-                    break;
-                case 2:
-                    day=getString(R.string.tuesday);
-                    break;
-                case 3:
-                    day=getString(R.string.wednesday);
-                    break;
-                case 4:
-                    day=getString(R.string.thursday);
-                    break;
-                case 5:
-                    day=getString(R.string.friday);
-                    break;
-                case 6:
-                    day=getString(R.string.saturday);
-                    break;
-                default:
-                    break;
-            }
-            return day;
-        }
-        public String getMonthWord(int monthNumber){
-            String month="";
-            switch (monthNumber){
-                case 1:
-                    month=getString(R.string.january);
-                    break;
-                case 2:
-                    month=getString(R.string.february);
-                    break;
-                case 3:
-                    month=getString(R.string.march);
-                    break;
-                case 4:
-                    month=getString(R.string.april);
-                    break;
-                case 5:
-                    month=getString(R.string.may);
-                    break;
-                case 6:
-                    month=getString(R.string.june);
-                    break;
-                case 7:
-                    month=getString(R.string.july);
-                    break;
-                case 8:
-                    month=getString(R.string.august);
-                    break;
-                case 9:
-                    month=getString(R.string.september);
-                    break;
-                case 10:
-                    month=getString(R.string.october);
-                    break;
-                case 11:
-                    month=getString(R.string.november);
-                    break;
-                case 12:
-                    month=getString(R.string.december);
-                    break;
-                default:
-                    break;
-            }
-            return month;
-        }
-
         @Override
         public void onVisibilityChanged(boolean visible) {
             super.onVisibilityChanged(visible);
@@ -557,6 +387,8 @@ public class WatchFaceService extends CanvasWatchFaceService {
             mRegisteredTimeZoneReceiver = true;
             IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
             WatchFaceService.this.registerReceiver(mTimeZoneReceiver, filter);
+            IntentFilter batteryFilter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+            WatchFaceService.this.registerReceiver(mBatteryReceiver, batteryFilter);
         }
 
         private void unregisterReceiver() {
@@ -565,6 +397,7 @@ public class WatchFaceService extends CanvasWatchFaceService {
             }
             mRegisteredTimeZoneReceiver = false;
             WatchFaceService.this.unregisterReceiver(mTimeZoneReceiver);
+            WatchFaceService.this.unregisterReceiver(mBatteryReceiver);
         }
         /**
          * Starts the {@link #mUpdateTimeHandler} timer if it should be running and isn't currently
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.watchface;
+
+/**
+ * The art the watch bundles for each weather condition.
+ *
+ * The phone only sends OpenWeatherMap condition codes and temperatures, and the watch picks its
+ * own copy of the art, so no image crosses Bluetooth.
+ */
+final class WeatherArt {
+    // The single day item older phone apps send instead of ForecastStore.PATH_FORECAST
+    static final String PATH_WEATHER = "/CONFIG";
+    static final String KEY_VERSION = "version";
+    static final String KEY_WEATHER_ID = "weatherId";
+    static final String KEY_HIGH = "high";
+    static final String KEY_LOW = "low";
+
+    /**
+     * Version of the data item layout.  Items without it carry an image asset instead of a
+     * condition code.
+     */
+    static final int VERSION = 2;
+
+    private WeatherArt() {
+    }
+
+    /**
+     * Same mapping as the phone's Utility.getArtResourceForWeatherCondition.
+     *
+     * @param weatherId from OpenWeatherMap API response
+     * @return resource id for the corresponding artwork, clear skies if no relation is found.
+     */
+    static int getArtResource(int weatherId) {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.art_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.art_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.art_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.art_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.art_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.art_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.art_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.art_clouds;
+        }
+        return R.drawable.art_clear;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.watchface;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.AsyncTask;
+import android.util.LruCache;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Decodes weather art off the UI thread, straight to the size the watch face draws it at.
+ *
+ * Decoded icons are kept in a small cache, and an icon that is already being decoded is not
+ * decoded again, so the same weather arriving from both onConnected and onDataChanged costs a
+ * single decode.  Must only be used from the UI thread.
+ */
+class WeatherIconLoader {
+    /**
+     * Size the weather icon is drawn at, in pixels.
+     */
+    static final int ICON_SIZE = 70;
+
+    // Weather changes a few times a day at most, so a handful of icons covers it
+    private static final int MAX_ICONS = 4;
+
+    interface Listener {
+        /**
+         * Called on the UI thread once an icon is ready.
+         */
+        void onIconLoaded(int art, Bitmap icon);
+    }
+
+    private final Resources mResources;
+    private final Listener mListener;
+    private final LruCache<Integer, Bitmap> mIcons = new LruCache<Integer, Bitmap>(MAX_ICONS);
+    private final Set<Integer> mInFlight = new HashSet<Integer>();
+
+    WeatherIconLoader(Resources resources, Listener listener) {
+        mResources = resources;
+        mListener = listener;
+    }
+
+    /**
+     * Hands the icon for the art resource to the listener, right away if it is cached and
+     * otherwise once it has been decoded.
+     */
+    void load(int art) {
+        Bitmap icon = mIcons.get(art);
+        if (icon != null) {
+            mListener.onIconLoaded(art, icon);
+        } else if (mInFlight.add(art)) {
+            new DecodeTask().executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, art);
+        }
+    }
+
+    private class DecodeTask extends AsyncTask<Integer, Void, Bitmap> {
+        private int mArt;
+
+        @Override
+        protected Bitmap doInBackground(Integer... params) {
+            mArt = params[0];
+            return decode(mResources, mArt);
+        }
+
+        @Override
+        protected void onPostExecute(Bitmap icon) {
+            mInFlight.remove(mArt);
+            if (icon != null) {
+                mIcons.put(mArt, icon);
+                mListener.onIconLoaded(mArt, icon);
+            }
+        }
+    }
+
+    /**
+     * Decodes the art at the smallest power of two reduction that is still at least
+     * {@link #ICON_SIZE}, then scales that down to it exactly.
+     */
+    private static Bitmap decode(Resources resources, int art) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        options.inScaled = false;
+        BitmapFactory.decodeResource(resources, art, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= ICON_SIZE
+                && options.outHeight / (sampleSize * 2) >= ICON_SIZE) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap decoded = BitmapFactory.decodeResource(resources, art, options);
+        if (decoded == null
+                || (decoded.getWidth() == ICON_SIZE && decoded.getHeight() == ICON_SIZE)) {
+            return decoded;
+        }
+
+        Bitmap icon = Bitmap.createScaledBitmap(decoded, ICON_SIZE, ICON_SIZE, true);
+        if (icon != decoded) {
+            decoded.recycle();
+        }
+        return icon;
+    }
+}